@@ -0,0 +1,99 @@
+package bench;
+
+import java.util.Arrays;
+
+/**
+ * A minimal microbenchmark harness in the spirit of JMH, which is not among
+ * the libraries of this project.
+ *
+ * A benchmark is an operation that is called repeatedly: it first runs for a
+ * number of warmup iterations, so that it is compiled by the JIT, and then
+ * for a number of measured iterations of a fixed duration each. The result of
+ * every call is consumed by a volatile sink, so that the JIT cannot remove the
+ * operation as dead code. Results are reported as the mean and standard
+ * deviation of the time per operation over the measured iterations.
+ *
+ * The number of iterations and their duration can be set by the system
+ * properties bench.warmup, bench.iterations and bench.time (ms), e.g.,
+ * {@code -Dbench.iterations=10}.
+ */
+public class Bench {
+
+	/**
+	 * An operation to benchmark
+	 */
+	public interface Op {
+		/**
+		 * @return any result of the operation, which is consumed by the sink
+		 */
+		double run();
+	}
+
+	private static final int WARMUP = Integer.getInteger("bench.warmup", 5);
+	private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+	private static final long TIME = Integer.getInteger("bench.time", 500) * 1000000L;
+
+	// consumes results of operations
+	private static volatile double sink;
+
+	private final String filter;
+
+	/**
+	 * @param filter
+	 *            only benchmarks whose names contain the filter are run, or
+	 *            all benchmarks if null
+	 */
+	public Bench(String filter) {
+		this.filter = filter;
+		System.out.println(String.format("%-40s %14s %12s", "Benchmark", "ns/op", "error"));
+	}
+
+	/**
+	 * Run a benchmark, and print its time per operation
+	 */
+	public void run(String name, Op op) {
+		if (filter != null && !name.contains(filter))
+			return;
+
+		for (int i = 0; i < WARMUP; i++)
+			iteration(op);
+
+		double[] times = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++)
+			times[i] = iteration(op);
+
+		double mean = 0;
+		for (double t : times)
+			mean += t;
+		mean /= times.length;
+
+		double var = 0;
+		for (double t : times)
+			var += (t - mean) * (t - mean);
+		double std = times.length > 1 ? Math.sqrt(var / (times.length - 1)) : 0;
+
+		System.out.println(String.format("%-40s %14.1f %12.1f", name, mean, std));
+		if (Boolean.getBoolean("bench.verbose"))
+			System.out.println("  " + Arrays.toString(times));
+	}
+
+	/**
+	 * @return time per operation (ns) of one iteration
+	 */
+	private static double iteration(Op op) {
+		double res = 0;
+		long ops = 0;
+		long start = System.nanoTime(), elapsed;
+		do {
+			// check the clock every 64 calls to keep its cost out of short
+			// operations
+			for (int i = 0; i < 64; i++)
+				res += op.run();
+			ops += 64;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < TIME);
+
+		sink = res;
+		return (double) elapsed / ops;
+	}
+}
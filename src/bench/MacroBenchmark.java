@@ -0,0 +1,422 @@
+package bench;
+
+import happy.coding.io.Configer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import model.Recommender;
+import model.Recommender.Measure;
+
+/**
+ * End-to-end benchmark of the FAMF models on a synthetic dataset (see
+ * {@link SyntheticDataset}), to compare the performance of commits.
+ *
+ * The dataset is generated into folder data/ of the given folder. Each model
+ * is then trained for a fixed number of iterations with its configuration in
+ * conf/, whose datasets, vocabularies, iterations, threads and seed are
+ * overridden. Every model runs in a JVM of its own (with the JVM options of
+ * this one), so that its peak memory and JIT profile are not shared with the
+ * others. For each model, one row is appended to a CSV report with the load
+ * time, training throughput (tuples/sec), evaluation throughput (test
+ * users/sec), and the peak resident set size.
+ *
+ * With a baseline report, e.g., the report of an earlier commit, the
+ * throughputs, load time and memory are compared with the last row of the
+ * same model and size in the baseline; the exit status is 1 if any of them is
+ * worse by more than the tolerance. Usage:
+ *
+ * <pre>
+ * java -cp "lib/*":bin bench.MacroBenchmark &lt;folder&gt; [key=value ...]
+ * </pre>
+ */
+public class MacroBenchmark {
+
+	private static final String[] COLUMNS = { "date", "commit", "model", "users", "tweets", "threads", "iters",
+			"tuples", "testUsers", "loadMs", "iterMs", "tuplesPerSec", "evalMs", "usersPerSec", "trainMs", "testMs",
+			"peakRssMB", "MAP" };
+
+	// columns compared with the baseline, and whether higher is better
+	private static final String[] COMPARED = { "tuplesPerSec", "usersPerSec", "loadMs", "peakRssMB" };
+	private static final boolean[] HIGHER_BETTER = { true, true, false, false };
+
+	// columns identifying comparable runs
+	private static final String[] KEYS = { "model", "users", "tweets", "threads" };
+
+	/**
+	 * @return default options, besides those of {@link SyntheticDataset}
+	 */
+	public static Map<String, String> defaults() {
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("models", "text,visual,text_visual");
+		options.put("iters", "5");
+		options.put("threads", "1");
+		// folder of the model configurations
+		options.put("conf.dir", "conf");
+		// report to append to, by default report.csv in the given folder
+		options.put("report", "");
+		// report to compare with, and the tolerated relative change
+		options.put("baseline", "");
+		options.put("tolerance", "0.1");
+		// commit of the results, by default the HEAD of git
+		options.put("commit", "");
+		return options;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("run")) {
+			runModel(args[1], args[2]);
+			return;
+		}
+
+		Map<String, String> options = defaults();
+		Map<String, String> dataOptions = SyntheticDataset.defaults();
+		if (args.length == 0) {
+			System.out.println("Usage: bench.MacroBenchmark <folder> [key=value ...], with options " + options
+					+ " and the dataset options " + dataOptions);
+			return;
+		}
+
+		for (int i = 1; i < args.length; i++) {
+			String[] kv = args[i].split("=", 2);
+			if (kv.length == 2 && options.containsKey(kv[0]))
+				options.put(kv[0], kv[1]);
+			else if (kv.length == 2 && dataOptions.containsKey(kv[0]))
+				dataOptions.put(kv[0], kv[1]);
+			else
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+		}
+
+		boolean regressed = new MacroBenchmark(args[0], options, dataOptions).run();
+		if (regressed)
+			System.exit(1);
+	}
+
+	private final String folder;
+	private final Map<String, String> options, dataOptions;
+
+	public MacroBenchmark(String folder, Map<String, String> options, Map<String, String> dataOptions) {
+		this.folder = new File(folder).getAbsolutePath() + File.separator;
+		this.options = options;
+		this.dataOptions = dataOptions;
+	}
+
+	/**
+	 * Run all models, and append their results to the report
+	 *
+	 * @return whether any result regressed from the baseline
+	 */
+	public boolean run() throws Exception {
+		String data = folder + "data" + File.separator;
+		new SyntheticDataset(dataOptions).write(data);
+
+		String commit = options.get("commit");
+		if (commit.isEmpty())
+			commit = gitHead();
+
+		String date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+
+		List<Map<String, String>> rows = new ArrayList<>();
+		for (String model : options.get("models").split(",")) {
+			model = model.trim();
+			System.out.println("Running " + model + " ...");
+
+			Map<String, String> row = runChild(model, writeConf(model, data));
+			row.put("date", date);
+			row.put("commit", commit);
+			row.put("model", model);
+			row.put("users", dataOptions.get("users"));
+			row.put("tweets", dataOptions.get("tweets"));
+			row.put("threads", options.get("threads"));
+			rows.add(row);
+		}
+
+		// read the baseline before appending, as both can be the same file
+		String baseline = options.get("baseline");
+		List<Map<String, String>> base = baseline.isEmpty() ? null : readReport(baseline);
+
+		String report = options.get("report");
+		if (report.isEmpty())
+			report = folder + "report.csv";
+		appendReport(report, rows);
+
+		System.out.println();
+		System.out.println(join(COLUMNS));
+		for (Map<String, String> row : rows)
+			System.out.println(toLine(row));
+		System.out.println("Appended to " + report);
+
+		return base != null && compare(base, rows, Double.parseDouble(options.get("tolerance")));
+	}
+
+	/**
+	 * Write the configuration of a model, i.e., conf/model.conf whose
+	 * benchmark settings are overridden
+	 *
+	 * @return path of the configuration
+	 */
+	private String writeConf(String model, String data) throws IOException {
+		Map<String, String> overrides = new LinkedHashMap<>();
+		overrides.put("dataset.train.rating", data + "train_rating.txt");
+		overrides.put("dataset.test.rating", data + "test_rating.txt");
+		overrides.put("dataset.train.text", data + "text.txt");
+		overrides.put("dataset.test.text", data + "text.txt");
+		overrides.put("dataset.train.visual", data + "visual.txt");
+		overrides.put("dataset.test.visual", data + "visual.txt");
+		overrides.put("num.text.words", dataOptions.get("text.words"));
+		overrides.put("num.visual.words", dataOptions.get("visual.words"));
+
+		// settings added to every configuration, while the above are only
+		// replaced if the model has them
+		Map<String, String> settings = new LinkedHashMap<>();
+		settings.put("num.max.iter", options.get("iters"));
+		settings.put("num.threads", options.get("threads"));
+		settings.put("random.seed", dataOptions.get("seed"));
+		settings.put("dataset.cache", "off");
+		settings.put("result.dir", folder + "results");
+
+		File base = new File(options.get("conf.dir"), model + ".conf");
+		List<String> lines = Files.readAllLines(base.toPath(), StandardCharsets.UTF_8);
+
+		String path = folder + model + ".conf";
+		try (PrintWriter pw = new PrintWriter(path, "UTF-8")) {
+			for (String line : lines) {
+				String key = line.contains("=") && !line.trim().startsWith("#") ? line.substring(0,
+						line.indexOf('=')).trim() : null;
+
+				if (key != null && overrides.containsKey(key))
+					pw.println(key + "=" + overrides.get(key));
+				else if (key != null && settings.containsKey(key))
+					pw.println(key + "=" + settings.remove(key));
+				else
+					pw.println(line);
+			}
+
+			for (Map.Entry<String, String> en : settings.entrySet())
+				pw.println(en.getKey() + "=" + en.getValue());
+		}
+
+		return path;
+	}
+
+	/**
+	 * Run a model in a new JVM, whose output goes to model.log
+	 *
+	 * @return results of the model
+	 */
+	private Map<String, String> runChild(String model, String confPath) throws Exception {
+		File result = new File(folder + model + ".result"), log = new File(folder + model + ".log");
+		result.delete();
+
+		List<String> cmd = new ArrayList<>();
+		cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.addAll(Arrays.asList(MacroBenchmark.class.getName(), "run", confPath, result.getPath()));
+
+		Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(log).start();
+		if (p.waitFor() != 0 || !result.exists())
+			throw new IOException("Benchmark of " + model + " failed, see " + log);
+
+		Properties props = new Properties();
+		try (FileInputStream in = new FileInputStream(result)) {
+			props.load(in);
+		}
+
+		Map<String, String> row = new HashMap<>();
+		for (String key : props.stringPropertyNames())
+			row.put(key, props.getProperty(key));
+		return row;
+	}
+
+	/**
+	 * Train and evaluate a model in this JVM, and write its results into a
+	 * properties file
+	 */
+	private static void runModel(String confPath, String resultPath) throws Exception {
+		Configer cf = new Configer(confPath);
+
+		long begin = System.nanoTime();
+		Recommender rec = PrecisionBenchmark.build(cf, confPath);
+		double loadMs = (System.nanoTime() - begin) / 1e6;
+
+		rec.execute();
+
+		Map<Measure, Double> m = rec.measures;
+		int tuples = rec.ratingTuples.size(), testUsers = rec.testMatrix.numRows();
+		double iterMs = m.get(Measure.IterTime), evalMs = m.get(Measure.EvalTime);
+
+		Properties props = new Properties();
+		props.setProperty("iters", String.valueOf(m.get(Measure.NumIters).intValue()));
+		props.setProperty("tuples", String.valueOf(tuples));
+		props.setProperty("testUsers", String.valueOf(testUsers));
+		props.setProperty("loadMs", format(loadMs));
+		props.setProperty("iterMs", format(iterMs));
+		props.setProperty("tuplesPerSec", format(iterMs > 0 ? tuples * 1000 / iterMs : 0));
+		props.setProperty("evalMs", format(evalMs));
+		props.setProperty("usersPerSec", format(evalMs > 0 ? testUsers * 1000 / evalMs : 0));
+		props.setProperty("trainMs", format(m.get(Measure.TrainTime)));
+		props.setProperty("testMs", format(m.get(Measure.TestTime)));
+		props.setProperty("peakRssMB", format(peakRssMB()));
+		props.setProperty("MAP", String.format("%.6f", m.get(Measure.MAP)));
+
+		try (FileOutputStream out = new FileOutputStream(resultPath)) {
+			props.store(out, confPath);
+		}
+	}
+
+	/**
+	 * @return the peak resident set size (MB) of this process on Linux, or
+	 *         the peak usage of the heap elsewhere
+	 */
+	private static double peakRssMB() throws IOException {
+		File status = new File("/proc/self/status");
+		if (status.exists()) {
+			for (String line : Files.readAllLines(status.toPath(), StandardCharsets.UTF_8)) {
+				// e.g., "VmHWM:	  123456 kB"
+				if (line.startsWith("VmHWM:"))
+					return Long.parseLong(line.replaceAll("\\D", "")) / 1024.0;
+			}
+		}
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak / 1048576.0;
+	}
+
+	/**
+	 * @return whether any result is worse than the last comparable one in the
+	 *         baseline by more than the tolerance
+	 */
+	private static boolean compare(List<Map<String, String>> base, List<Map<String, String>> rows, double tolerance) {
+		boolean regressed = false;
+
+		System.out.println();
+		System.out.println(String.format("%-12s %-14s %14s %14s %9s", "model", "metric", "baseline", "current",
+				"change"));
+		for (Map<String, String> row : rows) {
+			Map<String, String> last = null;
+			for (Map<String, String> b : base) {
+				if (sameKeys(b, row))
+					last = b;
+			}
+			if (last == null) {
+				System.out.println(String.format("%-12s no comparable run in the baseline", row.get("model")));
+				continue;
+			}
+
+			for (int c = 0; c < COMPARED.length; c++) {
+				double before = Double.parseDouble(last.get(COMPARED[c]));
+				double now = Double.parseDouble(row.get(COMPARED[c]));
+				double change = before == 0 ? 0 : (now - before) / before;
+
+				boolean worse = HIGHER_BETTER[c] ? change < -tolerance : change > tolerance;
+				regressed |= worse;
+				System.out.println(String.format("%-12s %-14s %14s %14s %+8.1f%%%s", row.get("model"), COMPARED[c],
+						last.get(COMPARED[c]), row.get(COMPARED[c]), change * 100, worse ? "  REGRESSION" : ""));
+			}
+		}
+
+		return regressed;
+	}
+
+	private static boolean sameKeys(Map<String, String> a, Map<String, String> b) {
+		for (String key : KEYS) {
+			if (!b.get(key).equals(a.get(key)))
+				return false;
+		}
+		return true;
+	}
+
+	private static List<Map<String, String>> readReport(String path) throws IOException {
+		List<Map<String, String>> rows = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path),
+				StandardCharsets.UTF_8))) {
+			String line = br.readLine();
+			if (line == null)
+				return rows;
+
+			String[] header = line.split(",");
+			while ((line = br.readLine()) != null) {
+				String[] vals = line.split(",");
+				Map<String, String> row = new HashMap<>();
+				for (int i = 0; i < header.length && i < vals.length; i++)
+					row.put(header[i], vals[i]);
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static void appendReport(String path, List<Map<String, String>> rows) throws IOException {
+		File file = new File(path);
+		boolean header = !file.exists() || file.length() == 0;
+
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(file, true))) {
+			if (header)
+				pw.println(join(COLUMNS));
+			for (Map<String, String> row : rows)
+				pw.println(toLine(row));
+		}
+	}
+
+	private static String toLine(Map<String, String> row) {
+		String[] vals = new String[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++)
+			vals[i] = row.get(COLUMNS[i]);
+		return join(vals);
+	}
+
+	private static String join(String[] vals) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < vals.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(vals[i]);
+		}
+		return sb.toString();
+	}
+
+	private static String format(double val) {
+		return String.format("%.1f", val);
+	}
+
+	/**
+	 * @return the abbreviated HEAD commit of git, or "unknown"
+	 */
+	private static String gitHead() {
+		try {
+			Process p = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(),
+					StandardCharsets.UTF_8))) {
+				String line = br.readLine();
+				return p.waitFor() == 0 && line != null ? line.trim() : "unknown";
+			}
+		} catch (Exception e) {
+			return "unknown";
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package bench;
+
+import happy.coding.math.Randoms;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import matrix.DenseMatrix;
+import matrix.DenseVector;
+import matrix.SparseMatrix;
+import model.BPRKernel;
+import model.Optimizer;
+import model.TextFactor;
+import model.TextVisualFactor;
+import model.VisualFactor;
+import util.EvalUtil;
+import util.VectorUtil;
+import data.DataDAO;
+import data.RatingTuple;
+import data.Tweet;
+import data.TweetFeatureStore;
+
+/**
+ * Microbenchmarks of the operations in the inner loops of training and
+ * evaluation, run by {@link Bench} on synthetic data. The vocabularies and the
+ * number of factors follow conf/text_visual.conf, and the numbers of tweets
+ * and words per tweet are those of a dataset of image tweets. Usage:
+ *
+ * <pre>
+ * java -cp "lib/*":bin bench.MicroBenchmarks [name filter]
+ * </pre>
+ */
+public class MicroBenchmarks {
+
+	private static final int NUM_USERS = 5000, NUM_TWEETS = 200000;
+	private static final int NUM_TEXT_WORDS = 37646, NUM_VISUAL_WORDS = 1000, NUM_FACTORS = 10;
+	// mean numbers of text and visual words per tweet
+	private static final int TEXT_LENGTH = 12, VISUAL_LENGTH = 5;
+	// number of candidate tweets per test user, and the ratio of positives
+	private static final int NUM_CANDIDATES = 1000;
+	private static final double POSITIVE_RATIO = 0.05;
+
+	// number of precomputed random arguments, cycled through by benchmarks
+	private static final int NUM_ARGS = 1 << 12;
+
+	private final Random random = new Random(1);
+	private final DataDAO dao = new DataDAO();
+	private final DenseMatrix U, T, V;
+	private final int[] users = new int[NUM_ARGS], tweets = new int[NUM_ARGS];
+	private final RatingTuple[] tuples = new RatingTuple[NUM_ARGS];
+
+	private int next = 0;
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench(args.length > 0 ? args[0] : null);
+		new MicroBenchmarks().run(bench);
+	}
+
+	public MicroBenchmarks() {
+		Randoms.seed(1);
+
+		U = new DenseMatrix(NUM_USERS, NUM_FACTORS);
+		T = new DenseMatrix(NUM_TEXT_WORDS, NUM_FACTORS);
+		V = new DenseMatrix(NUM_VISUAL_WORDS, NUM_FACTORS);
+		U.init(0.1);
+		T.init(0.1);
+		V.init(0.1);
+
+		dao.features = newFeatures();
+		for (int i = 0; i < NUM_ARGS; i++) {
+			users[i] = random.nextInt(NUM_USERS);
+			tweets[i] = random.nextInt(NUM_TWEETS);
+			tuples[i] = new RatingTuple(users[i], tweets[i], random.nextInt(NUM_TWEETS));
+		}
+	}
+
+	/**
+	 * @return features of tweets, where text words follow a skewed
+	 *         distribution as natural language does
+	 */
+	private TweetFeatureStore newFeatures() {
+		Tweet[] ts = new Tweet[NUM_TWEETS];
+		for (int i = 0; i < NUM_TWEETS; i++) {
+			Tweet t = new Tweet(null, i);
+
+			int[] words = new int[1 + random.nextInt(2 * TEXT_LENGTH - 1)];
+			for (int k = 0; k < words.length; k++)
+				words[k] = (int) (NUM_TEXT_WORDS * Math.pow(random.nextDouble(), 3));
+			t.setText(words, words.length);
+
+			short[] tags = new short[1 + random.nextInt(2 * VISUAL_LENGTH - 1)];
+			for (int k = 0; k < tags.length; k++)
+				tags[k] = (short) random.nextInt(NUM_VISUAL_WORDS);
+			t.setVisual(tags, tags.length);
+
+			ts[i] = t;
+		}
+		return new TweetFeatureStore(ts);
+	}
+
+	private int nextArg() {
+		return next = (next + 1) & (NUM_ARGS - 1);
+	}
+
+	private void run(Bench bench) {
+		final double[] buf = new double[NUM_FACTORS];
+		final TweetFeatureStore fs = dao.features;
+
+		/******************* matrix package ******************/
+
+		bench.run("DenseMatrix.copyRow", new Bench.Op() {
+
+			@Override
+			public double run() {
+				U.copyRow(users[nextArg()], buf, 0);
+				return buf[0];
+			}
+		});
+
+		bench.run("DenseMatrix.addRowTo", new Bench.Op() {
+
+			@Override
+			public double run() {
+				T.addRowTo(tweets[nextArg()] % NUM_TEXT_WORDS, 1.0, buf);
+				return buf[0];
+			}
+		});
+
+		bench.run("DenseMatrix.rowMult", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int i = nextArg();
+				return DenseMatrix.rowMult(U, users[i], T, tweets[i] % NUM_TEXT_WORDS);
+			}
+		});
+
+		bench.run("DenseVector.inner", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int i = nextArg();
+				DenseVector u = U.row(users[i], false);
+				return u.inner(T.row(tweets[i] % NUM_TEXT_WORDS, false));
+			}
+		});
+
+		final SparseMatrix candidates = newCandidates();
+		bench.run("SparseMatrix.getColumns", new Bench.Op() {
+
+			@Override
+			public double run() {
+				return candidates.getColumns(users[nextArg()] % candidates.numRows()).size();
+			}
+		});
+
+		/******************* word factors ******************/
+
+		bench.run("VectorUtil.averageWordFactor.text", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int j = tweets[nextArg()];
+				return VectorUtil.averageWordFactor(fs.textWords, fs.textFreq, fs.textPtr[j], fs.textPtr[j + 1],
+						Math.sqrt(fs.textLength[j]), T, NUM_FACTORS).get(0);
+			}
+		});
+
+		bench.run("VectorUtil.averageWordFactor.visual", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int j = tweets[nextArg()];
+				return VectorUtil.averageWordFactor(fs.visualWords, fs.visualFreq, fs.visualPtr[j],
+						fs.visualPtr[j + 1], Math.sqrt(fs.visualLength[j]), V, NUM_FACTORS).get(0);
+			}
+		});
+
+		final BPRKernel textVisual = new TextVisualModel(dao, U, T, V).newKernel();
+		bench.run("BPRKernel.itemFactor", new Bench.Op() {
+
+			@Override
+			public double run() {
+				textVisual.itemFactor(fs, tweets[nextArg()], buf, 0);
+				return buf[0];
+			}
+		});
+
+		/******************* one BPR step ******************/
+
+		runStep(bench, "BPRKernel.update.text", new TextModel(dao, U, T).newKernel());
+		runStep(bench, "BPRKernel.update.visual", new VisualModel(dao, U, V).newKernel());
+		runStep(bench, "BPRKernel.update.text_visual", textVisual);
+
+		/******************* evaluation ******************/
+
+		final double[][] scores = new double[64][NUM_CANDIDATES];
+		final BitSet[] positives = new BitSet[scores.length];
+		final int[] numPos = new int[scores.length];
+		for (int s = 0; s < scores.length; s++) {
+			positives[s] = new BitSet(NUM_CANDIDATES);
+			for (int j = 0; j < NUM_CANDIDATES; j++) {
+				scores[s][j] = random.nextGaussian();
+				if (random.nextDouble() < POSITIVE_RATIO) {
+					positives[s].set(j);
+					numPos[s]++;
+				}
+			}
+		}
+
+		// reused across rankings, as by an evaluation thread
+		final EvalUtil.Scratch scratch = new EvalUtil.Scratch();
+
+		bench.run("EvalUtil.AP.scores", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int s = nextArg() & (scores.length - 1);
+				return EvalUtil.AP(scores[s], positives[s], NUM_CANDIDATES, numPos[s], scratch);
+			}
+		});
+
+		bench.run("EvalUtil.AP.ranking", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int s = nextArg() & (scores.length - 1);
+				int[] ranking = EvalUtil.rankTop(scores[s], NUM_CANDIDATES, NUM_CANDIDATES, scratch);
+				return EvalUtil.AP(ranking, NUM_CANDIDATES, positives[s], numPos[s]);
+			}
+		});
+
+		bench.run("EvalUtil.rankTop", new Bench.Op() {
+
+			@Override
+			public double run() {
+				int s = nextArg() & (scores.length - 1);
+				return EvalUtil.rankTop(scores[s], NUM_CANDIDATES, EvalUtil.topK, scratch)[0];
+			}
+		});
+	}
+
+	private void runStep(Bench bench, String name, final BPRKernel kernel) {
+		bench.run(name, new Bench.Op() {
+
+			@Override
+			public double run() {
+				return kernel.update(tuples[nextArg()]);
+			}
+		});
+	}
+
+	/**
+	 * @return a test matrix of candidate tweets of a part of users
+	 */
+	private SparseMatrix newCandidates() {
+		int numRows = NUM_USERS / 10, size = numRows * NUM_CANDIDATES;
+		int[] rows = new int[size], cols = new int[size];
+		float[] vals = new float[size];
+		for (int k = 0; k < size; k++) {
+			rows[k] = k / NUM_CANDIDATES;
+			cols[k] = random.nextInt(NUM_TWEETS);
+			vals[k] = random.nextDouble() < POSITIVE_RATIO ? 1 : -1;
+		}
+		return new SparseMatrix(numRows, NUM_TWEETS, rows, cols, vals, size);
+	}
+
+	/*
+	 * Models with given factors, whose kernels take BPR steps as in training
+	 */
+
+	private static class TextModel extends TextFactor {
+		TextModel(DataDAO dao, DenseMatrix U, DenseMatrix T) {
+			super(dao, dao);
+			this.U = U;
+			this.T = T;
+			optU = new Optimizer.SGD();
+			optT = new Optimizer.SGD();
+			numSharedFactors = U.numColumns();
+			lRate = 0.01f;
+			regU = regT = 0.01f;
+		}
+
+		@Override
+		protected BPRKernel newKernel() {
+			return super.newKernel();
+		}
+	}
+
+	private static class VisualModel extends VisualFactor {
+		VisualModel(DataDAO dao, DenseMatrix U, DenseMatrix V) {
+			super(dao, dao);
+			this.U = U;
+			this.V = V;
+			optU = new Optimizer.SGD();
+			optV = new Optimizer.SGD();
+			numSharedFactors = U.numColumns();
+			lRate = 0.01f;
+			regU = regV = 0.01f;
+		}
+
+		@Override
+		protected BPRKernel newKernel() {
+			return super.newKernel();
+		}
+	}
+
+	private static class TextVisualModel extends TextVisualFactor {
+		TextVisualModel(DataDAO dao, DenseMatrix U, DenseMatrix T, DenseMatrix V) {
+			super(dao, dao);
+			this.U = U;
+			this.T = T;
+			this.V = V;
+			optU = new Optimizer.SGD();
+			optT = new Optimizer.SGD();
+			optV = new Optimizer.SGD();
+			numSharedFactors = U.numColumns();
+			lRate = 0.01f;
+			regU = regT = regV = 0.01f;
+		}
+
+		@Override
+		protected BPRKernel newKernel() {
+			return super.newKernel();
+		}
+	}
+}
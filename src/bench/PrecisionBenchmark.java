@@ -0,0 +1,81 @@
+package bench;
+
+import happy.coding.io.Configer;
+
+import java.util.Map;
+
+import main.TextMain;
+import main.TextVisualMain;
+import main.VisualMain;
+import model.Recommender;
+import model.Recommender.Measure;
+
+/**
+ * Compare the ranking quality and the training speed of a FAMF model whose
+ * factor matrices are stored in double precision against single precision.
+ *
+ * Both runs use the same configuration file and the same random seed
+ * (random.seed, 1 by default), so that they only differ in the precision of
+ * the stored factors. As both runs share the JIT profile of one JVM, pass
+ * "double" or "float" as the second argument to run only one of them, e.g.,
+ * when comparing iteration times. Usage:
+ *
+ * <pre>
+ * java -cp "lib/*":bin bench.PrecisionBenchmark conf/&lt;model_config&gt; [double|float]
+ * </pre>
+ */
+public class PrecisionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String configPath = args[0];
+		String only = args.length > 1 ? args[1] : null;
+
+		Map<Measure, Double> doubles = null, floats = null;
+		if (only == null || only.equals("double"))
+			doubles = run(configPath, false);
+		if (only == null || only.equals("float"))
+			floats = run(configPath, true);
+
+		System.out.println();
+		System.out.println("Precision,Pre1,Pre3,Pre5,Pre10,Pre20,MAP,IterTime(ms),TrainTime(ms)");
+		if (doubles != null)
+			System.out.println(toString("double", doubles));
+		if (floats != null)
+			System.out.println(toString("float", floats));
+	}
+
+	private static Map<Measure, Double> run(String configPath, boolean singlePrecision) throws Exception {
+		Configer cf = new Configer(configPath);
+		cf.setString("is.single.precision", singlePrecision ? "on" : "off");
+		if (!cf.containsKey("random.seed"))
+			cf.setString("random.seed", "1");
+
+		Recommender rec = build(cf, configPath);
+		rec.execute();
+
+		return rec.measures;
+	}
+
+	/**
+	 * @return the recommender of the model specified by "recommender"
+	 */
+	static Recommender build(Configer cf, String configPath) throws Exception {
+		String model = cf.getString("recommender");
+		switch (model) {
+		case "text":
+			return TextMain.build(cf, configPath);
+		case "visual":
+			return VisualMain.build(cf, configPath);
+		case "text_visual":
+			return TextVisualMain.build(cf, configPath);
+		default:
+			throw new IllegalArgumentException("Unknown recommender: " + model);
+		}
+	}
+
+	private static String toString(String precision, Map<Measure, Double> m) {
+		return String.format("%s,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.2f,%.0f", precision, m.get(Measure.Pre1),
+				m.get(Measure.Pre3), m.get(Measure.Pre5), m.get(Measure.Pre10), m.get(Measure.Pre20),
+				m.get(Measure.MAP), m.get(Measure.IterTime), m.get(Measure.TrainTime));
+	}
+}
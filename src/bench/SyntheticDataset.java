@@ -0,0 +1,246 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generate a synthetic dataset in the formats read by DataDAO, to test the
+ * models at any scale:
+ *
+ * <ul>
+ * <li>train_rating.txt, test_rating.txt: each line is a positive tweet of a
+ * user followed by its paired negative tweets, i.e., "user item 1,user item 0,
+ * ..."; test tweets are disjoint from training tweets</li>
+ * <li>text.txt: "tweet_id,w1 w2 w3 ..."</li>
+ * <li>visual.txt: "tweet_id,v1 v2 v3 ..."</li>
+ * </ul>
+ *
+ * Words are drawn from Zipfian distributions. To give the models something to
+ * learn, each tweet belongs to a topic, which shifts the ranks of its words,
+ * and users prefer tweets of their favorite topics. Options are given as
+ * key=value arguments (see {@link #defaults()}), e.g.,
+ *
+ * <pre>
+ * java -cp "lib/*":bin bench.SyntheticDataset dataset/synthetic users=10000 tweets=1000000 seed=7
+ * </pre>
+ */
+public class SyntheticDataset {
+
+	private final int numUsers, numTweets, numTestTweets, numTopics;
+	private final int posPerUser, testPosPerUser, numNegatives;
+	private final int numTextWords, textLength, numVisualWords, visualLength;
+	// probability that a positive tweet is of the user's favorite topic
+	private final double topicBias;
+	private final Random random;
+
+	// cumulative Zipfian distributions of word ranks
+	private final double[] textCdf, visualCdf;
+	// topic of each tweet, and the favorite topic of each user
+	private final int[] topics, favorites;
+
+	/**
+	 * @return default options
+	 */
+	public static Map<String, String> defaults() {
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("users", "1000");
+		options.put("tweets", "100000");
+		// ratio of the tweets used for test
+		options.put("test.ratio", "0.1");
+		options.put("topics", "20");
+		options.put("topic.bias", "0.8");
+		// number of positive tweets per user in the training/test set
+		options.put("pos.per.user", "50");
+		options.put("test.pos.per.user", "10");
+		// number of negative tweets paired with each positive
+		options.put("negatives", "5");
+		options.put("text.words", "37646");
+		options.put("text.length", "12");
+		options.put("visual.words", "1000");
+		options.put("visual.length", "5");
+		// exponent of the Zipfian distributions of words
+		options.put("zipf", "1.0");
+		options.put("seed", "1");
+		return options;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: bench.SyntheticDataset <output folder> [key=value ...], with options "
+					+ defaults());
+			return;
+		}
+
+		Map<String, String> options = defaults();
+		for (int i = 1; i < args.length; i++) {
+			String[] kv = args[i].split("=", 2);
+			if (kv.length != 2 || !options.containsKey(kv[0]))
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			options.put(kv[0], kv[1]);
+		}
+
+		new SyntheticDataset(options).write(args[0]);
+	}
+
+	public SyntheticDataset(Map<String, String> options) {
+		numUsers = Integer.parseInt(options.get("users"));
+		numTweets = Integer.parseInt(options.get("tweets"));
+		numTestTweets = (int) (numTweets * Double.parseDouble(options.get("test.ratio")));
+		numTopics = Integer.parseInt(options.get("topics"));
+		topicBias = Double.parseDouble(options.get("topic.bias"));
+		posPerUser = Integer.parseInt(options.get("pos.per.user"));
+		testPosPerUser = Integer.parseInt(options.get("test.pos.per.user"));
+		numNegatives = Integer.parseInt(options.get("negatives"));
+		numTextWords = Integer.parseInt(options.get("text.words"));
+		textLength = Integer.parseInt(options.get("text.length"));
+		numVisualWords = Integer.parseInt(options.get("visual.words"));
+		visualLength = Integer.parseInt(options.get("visual.length"));
+		random = new Random(Long.parseLong(options.get("seed")));
+
+		if (numTestTweets <= 0 || numTestTweets >= numTweets)
+			throw new IllegalArgumentException("Both training and test sets need tweets");
+		if (numVisualWords > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Visual word ids are stored as shorts");
+
+		double zipf = Double.parseDouble(options.get("zipf"));
+		textCdf = zipfCdf(numTextWords, zipf);
+		visualCdf = zipfCdf(numVisualWords, zipf);
+
+		topics = new int[numTweets];
+		for (int i = 0; i < numTweets; i++)
+			topics[i] = random.nextInt(numTopics);
+		favorites = new int[numUsers];
+		for (int u = 0; u < numUsers; u++)
+			favorites[u] = random.nextInt(numTopics);
+	}
+
+	/**
+	 * @return cumulative probabilities of ranks 1..n, where P(k) ~ 1 / k^s
+	 */
+	private static double[] zipfCdf(int n, double s) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++)
+			cdf[k] = sum += 1.0 / Math.pow(k + 1, s);
+		for (int k = 0; k < n; k++)
+			cdf[k] /= sum;
+		return cdf;
+	}
+
+	/**
+	 * @return a rank drawn from a cumulative distribution, starting from 0
+	 */
+	private int sample(double[] cdf) {
+		int k = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(cdf.length - 1, k >= 0 ? k : -k - 1);
+	}
+
+	/**
+	 * @return a word of a topic, whose ranks are shifted by the topic
+	 */
+	private int word(double[] cdf, int topic) {
+		return (int) ((sample(cdf) + (long) topic * cdf.length / numTopics) % cdf.length);
+	}
+
+	/**
+	 * @return id of a tweet, shaped like a Twitter id
+	 */
+	private static String tweetId(int tweet) {
+		return Long.toString(100000000000000000L + tweet);
+	}
+
+	/**
+	 * Write the dataset into a folder
+	 */
+	public void write(String folder) throws IOException {
+		new File(folder).mkdirs();
+		String dir = folder + File.separator;
+
+		// the last tweets are used for test
+		int numTrain = numTweets - numTestTweets;
+		writeRatings(dir + "train_rating.txt", 0, numTrain, groupByTopic(0, numTrain), posPerUser);
+		writeRatings(dir + "test_rating.txt", numTrain, numTweets, groupByTopic(numTrain, numTweets), testPosPerUser);
+		writeFeatures(dir + "text.txt", textCdf, textLength);
+		writeFeatures(dir + "visual.txt", visualCdf, visualLength);
+
+		System.out.println(String.format("Generated %d users, %d training and %d test tweets into %s", numUsers,
+				numTrain, numTestTweets, folder));
+		System.out.println(String.format("num.text.words=%d\nnum.visual.words=%d", numTextWords, numVisualWords));
+	}
+
+	/**
+	 * @return tweets [from, to) of each topic
+	 */
+	private int[][] groupByTopic(int from, int to) {
+		int[] counts = new int[numTopics];
+		for (int i = from; i < to; i++)
+			counts[topics[i]]++;
+
+		int[][] res = new int[numTopics][];
+		for (int t = 0; t < numTopics; t++)
+			res[t] = new int[counts[t]];
+
+		Arrays.fill(counts, 0);
+		for (int i = from; i < to; i++)
+			res[topics[i]][counts[topics[i]]++] = i;
+		return res;
+	}
+
+	private void writeRatings(String path, int from, int to, int[][] byTopic, int numPos) throws IOException {
+		try (Writer w = newWriter(path)) {
+			StringBuilder sb = new StringBuilder();
+			for (int u = 0; u < numUsers; u++) {
+				String user = "user_" + u;
+
+				for (int p = 0; p < numPos; p++) {
+					// a positive tweet of the favorite topic, or any tweet
+					int[] pool = byTopic[favorites[u]];
+					int pos = pool.length > 0 && random.nextDouble() < topicBias ? pool[random.nextInt(pool.length)]
+							: from + random.nextInt(to - from);
+
+					sb.setLength(0);
+					sb.append(user).append(' ').append(tweetId(pos)).append(" 1");
+					for (int n = 0; n < numNegatives; n++) {
+						int neg = from + random.nextInt(to - from);
+						sb.append(',').append(user).append(' ').append(tweetId(neg)).append(" 0");
+					}
+					sb.append('\n');
+					w.write(sb.toString());
+				}
+			}
+		}
+	}
+
+	private void writeFeatures(String path, double[] cdf, int meanLength) throws IOException {
+		try (Writer w = newWriter(path)) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < numTweets; i++) {
+				sb.setLength(0);
+				sb.append(tweetId(i)).append(',');
+
+				// lengths are uniform in [1, 2 * mean - 1]
+				int length = 1 + random.nextInt(Math.max(1, 2 * meanLength - 1));
+				for (int k = 0; k < length; k++) {
+					if (k > 0)
+						sb.append(' ');
+					sb.append(word(cdf, topics[i]));
+				}
+				sb.append('\n');
+				w.write(sb.toString());
+			}
+		}
+	}
+
+	private static Writer newWriter(String path) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 20);
+	}
+}
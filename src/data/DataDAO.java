@@ -3,19 +3,21 @@ package data;
 import happy.coding.io.FileIO;
 import happy.coding.io.Logs;
 import matrix.SparseMatrix;
-import util.FileUtil;
+import util.BinaryReader;
+import util.BinaryWriter;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
 
 public class DataDAO implements Serializable {
 
@@ -25,12 +27,19 @@ public class DataDAO implements Serializable {
 	private String ratingFile, textPath, visualPath;
 	private boolean replaceMissing;
 	private int numTextWords;
+	// whether to load/save the parsed dataset from/to a binary cache
+	private boolean cached = false;
+	// number of threads to parse rating files
+	private int numThreads = 1;
 	// store data as {user/item rate} matrix
 	public SparseMatrix ratingMatrix;
 	public ArrayList<RatingTuple> ratingTuple;
 
 	public int numRates;
-	public Tweet[] tweets;
+	// text/visual features of tweets
+	public TweetFeatureStore features;
+	// tweets being parsed, which are packed into features
+	private Tweet[] tweets;
 
 	// user/item {raw id, inner id} map
 	private BiMap<String, Integer> userIds, itemIds;
@@ -56,8 +65,15 @@ public class DataDAO implements Serializable {
 	public SparseMatrix readData(String ratingFile, String textFile, 
 			String visualFile, boolean replace, int numTextWords) throws Exception {
 		this.ratingFile = ratingFile;
+		this.textPath = textFile;
+		this.visualPath = visualFile;
 		this.replaceMissing = replace;
 		this.numTextWords = numTextWords;
+
+		String cachePath = getCachePath();
+		if (cached && readCache(cachePath)) {
+			return ratingMatrix;
+		}
 		
 		if (train) {
 			readRatingDataTrain(ratingFile);
@@ -71,21 +87,42 @@ public class DataDAO implements Serializable {
 		if (visualFile != null) {
 			readVisual(visualFile);
 		}
+		if (tweets != null) {
+			features = new TweetFeatureStore(tweets);
+			tweets = null;
+		}
+
+		if (cached) {
+			writeCache(cachePath);
+		}
 		return ratingMatrix;
 	}
 
-	private int getId(BiMap<String, Integer> map, String key) {
-		if (map.containsKey(key)) {
-			return map.get(key);
-		} else {
-			if (train) {
-				int size = map.size();
-				map.put(key, size);
-				return size;
-			} else {
-				return -1;
-			}
-		}
+	/**
+	 * Whether to keep the parsed dataset in a binary cache next to the rating
+	 * file, which is loaded instead of parsing the data files as long as they
+	 * are not modified.
+	 */
+	public void setCached(boolean cached) {
+		this.cached = cached;
+	}
+
+	/**
+	 * Number of threads to parse rating files, each of which parses a chunk of
+	 * lines
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @return path of the binary cache of the rating file with the given
+	 *         features, e.g., train_rating.txt.text_visual.bin
+	 */
+	private String getCachePath() {
+		String features = textPath == null ? (visualPath == null ? "rating" : "visual")
+				: (visualPath == null ? "text" : "text_visual");
+		return ratingFile + "." + features + ".bin";
 	}
 
 	/**
@@ -96,33 +133,20 @@ public class DataDAO implements Serializable {
 	public void readRatingDataTrain(String path) throws Exception {
 		System.out.println("Loading rating from " + path);
 
-		BufferedReader br = FileUtil.createReader(path);
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			String[] tuples = line.trim().split(",");
+		List<RatingParser.Chunk> chunks = RatingParser.parse(path, numThreads);
+		for (RatingParser.Chunk chunk : chunks) {
+			// inner id starting from 0
+			int[] rows = getIds(chunk.users, userIds, true);
+			int[] cols = getIds(chunk.items, itemIds, true);
 
-			boolean first = true;
 			int posUser = -1, posItem = -1;
-			for (String data : tuples) {
-				String[] tuple = data.trim().split(" ");
-				String user = tuple[0].trim();
-				String item = tuple[1].trim();
-				Float rate = Float.valueOf(tuple[2].trim());
-				if (rate == 0) {
-					rate = -1.0f;
-				}
-
-				// inner id starting from 0
-				int row = userIds.containsKey(user) ? userIds.get(user) : userIds.size();
-				int col = itemIds.containsKey(item) ? itemIds.get(item) : itemIds.size();
-
-				userIds.put(user, row);
-				itemIds.put(item, col);
+			for (int i = 0; i < chunk.size; i++) {
+				int row = rows[chunk.userIds[i]];
+				int col = cols[chunk.itemIds[i]];
 
-				if (first) {
+				if (chunk.first[i]) {
 					posUser = row;
 					posItem = col;
-					first = false;
 				} else {
 					RatingTuple t = new RatingTuple(posUser, posItem, col);
 					ratingTuple.add(t);
@@ -130,7 +154,6 @@ public class DataDAO implements Serializable {
 				numRates++;
 			}
 		}
-		br.close();
 
 		int numRows = numUsers(), numCols = numItems();
 		Logs.debug("Dataset: {Users, {}} = {{}, {}, {}}", ("Items, Ratings"), numRows, numCols, numRates);
@@ -145,44 +168,62 @@ public class DataDAO implements Serializable {
 	 */
 	public void readRatingDataTest(String path) throws Exception {
 		System.out.println("Loading rating from " + path);
-		// Table {row-id, col-id, rate}
-		Table<Integer, Integer, Float> dataTable = HashBasedTable.create();
 
-		// Map {col-id, multiple row-id}: used to fast build rate matrix
-		Multimap<Integer, Integer> colMap = HashMultimap.create();
+		List<RatingParser.Chunk> chunks = RatingParser.parse(path, numThreads);
+		int size = 0;
+		for (RatingParser.Chunk chunk : chunks)
+			size += chunk.size;
 
-		BufferedReader br = FileUtil.createReader(path);
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			String[] tuples = line.trim().split(",");
+		// (row-id, col-id, rate) triplets
+		int[] rowIds = new int[size], colIds = new int[size];
+		float[] rates = new float[size];
 
-			for (String data : tuples) {
-				String[] tuple = data.trim().split(" ");
-				String user = tuple[0].trim();
-				String item = tuple[1].trim();
-				Float rate = Float.valueOf(tuple[2].trim());
+		int k = 0;
+		for (RatingParser.Chunk chunk : chunks) {
+			// unknown test users are -1
+			int[] rows = getIds(chunk.users, userIds, false);
+			int[] cols = getIds(chunk.items, itemIds, true);
+
+			for (int i = 0; i < chunk.size; i++, k++) {
+				float rate = chunk.rates[i];
 				if (rate == 0) {
 					rate = -1.0f;
 				}
 
-				int row = getId(userIds, user);
-				int col = itemIds.containsKey(item) ? itemIds.get(item) : itemIds.size();
-
-				itemIds.put(item, col);
-				dataTable.put(row, col, rate);
-				colMap.put(col, row);
+				rowIds[k] = rows[chunk.userIds[i]];
+				colIds[k] = cols[chunk.itemIds[i]];
+				rates[k] = rate;
 			}
 		}
-		br.close();
 
-		numRates = dataTable.size();
+		// build rating matrix, where duplicated ratings are counted once
 		int numRows = numUsers(), numCols = numItems();
+		ratingMatrix = new SparseMatrix(numRows, numCols, rowIds, colIds, rates, size);
+		numRates = ratingMatrix.getData().length;
 
 		Logs.debug("Dataset: {Users, {}} = {{}, {}, {}, {}}", ("Items, Ratings"), numRows, numCols, numRates);
+	}
 
-		// build rating matrix
-		ratingMatrix = new SparseMatrix(numRows, numCols, dataTable, colMap);
-		dataTable = null;
+	/**
+	 * Merge the raw ids of a chunk into a map in order
+	 * 
+	 * @param add
+	 *            whether to add unknown ids to the map, otherwise they are -1
+	 * @return inner ids of the raw ids of the chunk
+	 */
+	private int[] getIds(RatingParser.Dictionary dict, BiMap<String, Integer> map, boolean add) {
+		int[] ids = new int[dict.size()];
+		for (int k = 0; k < ids.length; k++) {
+			String key = dict.get(k);
+			Integer id = map.get(key);
+			if (id == null) {
+				id = add ? map.size() : -1;
+				if (add)
+					map.put(key, id);
+			}
+			ids[k] = id;
+		}
+		return ids;
 	}
 
 	
@@ -224,6 +265,11 @@ public class DataDAO implements Serializable {
 	 * Each line is: tweet_id v1 v2 v3 ...
 	 */
 	public void readVisual(String path) throws IOException {
+		// visual features only
+		if (tweets == null) {
+			tweets = new Tweet[numItems()];
+		}
+
 		System.out.println("Loading visual from " + path);
 
 		BufferedReader br = FileIO.getReader(path);
@@ -236,6 +282,10 @@ public class DataDAO implements Serializable {
 				Integer tid = itemIds.get(id);
 				if (tid != null) {
 					Tweet t = tweets[tid];
+					if (t == null) {
+						t = new Tweet(id, tid);
+						tweets[tid] = t;
+					}
 					t.setVisual(items[1].trim().split("\\s+"));
 				}
 			}
@@ -243,7 +293,238 @@ public class DataDAO implements Serializable {
 		br.close();
 	}
 
-	
+	/*
+	 * Binary cache (big-endian, see BinaryWriter), in the order of:
+	 * 
+	 * header: magic, version, train, replaceMissing, numTextWords, paths of
+	 * rating/text/visual files, numRates;
+	 * 
+	 * dictionaries: raw ids of users and items in the order of inner ids;
+	 * 
+	 * ratings: user/pos/neg columns of rating tuples (train), or the CRS
+	 * structure of the rating matrix (test);
+	 * 
+	 * features: a flag per tweet, and text/visual words in CSR form, i.e.,
+	 * words of tweet i are [ptr[i], ptr[i + 1]) of the word and freq columns.
+	 */
+	private static final int CACHE_MAGIC = 0x46414d46; // "FAMF"
+	// 2: words of a tweet are sorted
+	private static final int CACHE_VERSION = 2;
+
+	/**
+	 * Save the parsed dataset into a binary cache
+	 */
+	public void writeCache(String path) throws IOException {
+		System.out.println("Saving dataset cache to " + path);
+
+		// write to a temporary file of this writer first, so that an incomplete
+		// cache is never loaded
+		File target = new File(path).getAbsoluteFile();
+		File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			try (BinaryWriter out = new BinaryWriter(tmp.getPath())) {
+				out.writeInt(CACHE_MAGIC);
+				out.writeInt(CACHE_VERSION);
+				out.writeBoolean(train);
+				out.writeBoolean(replaceMissing);
+				out.writeInt(numTextWords);
+				out.writeString(ratingFile);
+				out.writeString(textPath == null ? "" : textPath);
+				out.writeString(visualPath == null ? "" : visualPath);
+				out.writeInt(numRates);
+
+				writeIds(out, getIdUsers(), numUsers());
+				writeIds(out, getIdItems(), numItems());
+
+				if (train) {
+					int size = ratingTuple.size();
+					int[] users = new int[size], posIds = new int[size], negIds = new int[size];
+					for (int i = 0; i < size; i++) {
+						RatingTuple t = ratingTuple.get(i);
+						users[i] = t.user;
+						posIds[i] = t.posId;
+						negIds[i] = t.negId;
+					}
+					out.writeInt(size);
+					out.writeInts(users, 0, size);
+					out.writeInts(posIds, 0, size);
+					out.writeInts(negIds, 0, size);
+				} else {
+					int[] rowPtr = ratingMatrix.getRowPointers();
+					int[] colInd = ratingMatrix.getColumnIndices();
+					float[] rowData = ratingMatrix.getData();
+					out.writeInt(ratingMatrix.numRows());
+					out.writeInt(ratingMatrix.numColumns());
+					out.writeInt(rowData.length);
+					out.writeInts(rowPtr, 0, rowPtr.length);
+					out.writeInts(colInd, 0, rowData.length);
+					out.writeFloats(rowData, 0, rowData.length);
+				}
+
+				writeFeatures(out);
+			}
+
+			// replace the cache in one step, so that readers see either the old
+			// or the new cache
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			// removes a partial cache on failure, and nothing once moved
+			tmp.delete();
+		}
+	}
+
+	private void writeIds(BinaryWriter out, BiMap<Integer, String> ids, int size) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++)
+			out.writeString(ids.get(i));
+	}
+
+	private void writeFeatures(BinaryWriter out) throws IOException {
+		out.writeBoolean(features != null);
+		if (features == null)
+			return;
+
+		TweetFeatureStore f = features;
+		int n = f.numTweets, numText = f.numTextEntries(), numVisual = f.numVisualEntries();
+		out.writeInt(n);
+		out.writeBytes(f.flags, 0, n);
+		out.writeInt(numText);
+		out.writeInts(f.textPtr, 0, n + 1);
+		out.writeInts(f.textLength, 0, n);
+		out.writeInts(f.textWords, 0, numText);
+		out.writeShorts(f.textFreq, 0, numText);
+		out.writeInt(numVisual);
+		out.writeInts(f.visualPtr, 0, n + 1);
+		out.writeInts(f.visualLength, 0, n);
+		out.writeShorts(f.visualWords, 0, numVisual);
+		out.writeShorts(f.visualFreq, 0, numVisual);
+	}
+
+	/**
+	 * Load the parsed dataset from a binary cache, if the cache exists, is
+	 * newer than the data files, and is built with the same settings
+	 * 
+	 * @return whether the dataset is loaded
+	 */
+	public boolean readCache(String path) throws IOException {
+		File file = new File(path);
+		if (!file.exists() || isModified(file, ratingFile) || isModified(file, textPath)
+				|| isModified(file, visualPath)) {
+			return false;
+		}
+
+		System.out.println("Loading dataset cache from " + path);
+		try (BinaryReader in = new BinaryReader(path)) {
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || in.readBoolean() != train
+					|| in.readBoolean() != replaceMissing || in.readInt() != numTextWords
+					|| !in.readString().equals(ratingFile)
+					|| !in.readString().equals(textPath == null ? "" : textPath)
+					|| !in.readString().equals(visualPath == null ? "" : visualPath)) {
+				Logs.debug("Dataset cache {} is built with other settings, ignored", path);
+				return false;
+			}
+			int rates = in.readInt();
+
+			// test users are identified by the training set
+			String[] users = readIds(in);
+			if (train) {
+				for (int i = 0; i < users.length; i++)
+					userIds.put(users[i], i);
+			} else if (!isSameIds(userIds, users)) {
+				Logs.debug("Dataset cache {} is built with other training users, ignored", path);
+				return false;
+			}
+			String[] items = readIds(in);
+			for (int i = 0; i < items.length; i++)
+				itemIds.put(items[i], i);
+			numRates = rates;
+
+			if (train) {
+				int size = in.readInt();
+				int[] us = new int[size], posIds = new int[size], negIds = new int[size];
+				in.readInts(us, 0, size);
+				in.readInts(posIds, 0, size);
+				in.readInts(negIds, 0, size);
+
+				ratingTuple.ensureCapacity(size);
+				for (int i = 0; i < size; i++)
+					ratingTuple.add(new RatingTuple(us[i], posIds[i], negIds[i]));
+			} else {
+				int numRows = in.readInt(), numCols = in.readInt(), nnz = in.readInt();
+				int[] rowPtr = new int[numRows + 1], colInd = new int[nnz];
+				float[] rowData = new float[nnz];
+				in.readInts(rowPtr, 0, numRows + 1);
+				in.readInts(colInd, 0, nnz);
+				in.readFloats(rowData, 0, nnz);
+
+				int[] rowInd = new int[nnz];
+				for (int row = 0; row < numRows; row++)
+					Arrays.fill(rowInd, rowPtr[row], rowPtr[row + 1], row);
+				ratingMatrix = new SparseMatrix(numRows, numCols, rowInd, colInd, rowData, nnz);
+			}
+
+			readFeatures(in);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return whether a data file is modified after the cache is built
+	 */
+	private static boolean isModified(File cache, String path) {
+		return path != null && new File(path).lastModified() > cache.lastModified();
+	}
+
+	private static String[] readIds(BinaryReader in) throws IOException {
+		String[] ids = new String[in.readInt()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = in.readString();
+
+		return ids;
+	}
+
+	private static boolean isSameIds(BiMap<String, Integer> map, String[] ids) {
+		if (map.size() != ids.length)
+			return false;
+
+		for (int i = 0; i < ids.length; i++) {
+			Integer id = map.get(ids[i]);
+			if (id == null || id != i)
+				return false;
+		}
+		return true;
+	}
+
+	private void readFeatures(BinaryReader in) throws IOException {
+		if (!in.readBoolean())
+			return;
+
+		int n = in.readInt();
+		byte[] flags = new byte[n];
+		in.readBytes(flags, 0, n);
+
+		int numText = in.readInt();
+		int[] textPtr = new int[n + 1], textLength = new int[n], textWords = new int[numText];
+		short[] textFreq = new short[numText];
+		in.readInts(textPtr, 0, n + 1);
+		in.readInts(textLength, 0, n);
+		in.readInts(textWords, 0, numText);
+		in.readShorts(textFreq, 0, numText);
+
+		int numVisual = in.readInt();
+		int[] visualPtr = new int[n + 1], visualLength = new int[n];
+		short[] visualWords = new short[numVisual], visualFreq = new short[numVisual];
+		in.readInts(visualPtr, 0, n + 1);
+		in.readInts(visualLength, 0, n);
+		in.readShorts(visualWords, 0, numVisual);
+		in.readShorts(visualFreq, 0, numVisual);
+
+		features = new TweetFeatureStore(flags, textPtr, textLength, textWords, textFreq, visualPtr, visualLength,
+				visualWords, visualFreq);
+	}
+
 	public int numUsers() {
 		return userIds.size();
 	}
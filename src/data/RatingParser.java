@@ -0,0 +1,327 @@
+package data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parse a rating file in parallel. The file is split into chunks of bytes at
+ * line boundaries, and each chunk is memory-mapped and tokenized by its own
+ * thread without building a String per token.
+ *
+ * Users and items of a chunk are identified by their order of first
+ * appearance in the chunk, so that merging chunks in the order of the file
+ * assigns the same ids as a serial parser does.
+ *
+ * Each line is: user item rate, user item rate, ...
+ */
+public class RatingParser {
+
+	// the maximum size of a chunk, which is mapped as a whole
+	private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+	/**
+	 * Rating tuples of a chunk, in the order of the file
+	 */
+	public static class Chunk {
+		// raw ids of users and items of this chunk
+		public final Dictionary users = new Dictionary(), items = new Dictionary();
+
+		public int size;
+		// local ids of users and items, and rates of the tuples
+		public int[] userIds = new int[1024], itemIds = new int[1024];
+		public float[] rates = new float[1024];
+		// whether a tuple is the first one of its line
+		public boolean[] first = new boolean[1024];
+
+		private void add(int user, int item, float rate, boolean isFirst) {
+			if (size == userIds.length) {
+				int capacity = size * 2;
+				userIds = Arrays.copyOf(userIds, capacity);
+				itemIds = Arrays.copyOf(itemIds, capacity);
+				rates = Arrays.copyOf(rates, capacity);
+				first = Arrays.copyOf(first, capacity);
+			}
+			userIds[size] = user;
+			itemIds[size] = item;
+			rates[size] = rate;
+			first[size] = isFirst;
+			size++;
+		}
+	}
+
+	/**
+	 * Raw ids stored as bytes, numbered in the order of insertion
+	 */
+	public static class Dictionary {
+		private byte[] pool = new byte[1 << 12];
+		private int poolSize;
+
+		private int[] starts = new int[256], lengths = new int[256], hashes = new int[256];
+		private int size;
+
+		// open addressing: slot -> id + 1, or 0 if empty
+		private int[] table = new int[512];
+
+		/**
+		 * @return the id of bytes [from, to) of a buffer, added if absent
+		 */
+		int id(ByteBuffer buf, int from, int to) {
+			int h = 1;
+			for (int i = from; i < to; i++)
+				h = 31 * h + buf.get(i);
+			h ^= h >>> 16;
+
+			int mask = table.length - 1;
+			int slot = h & mask;
+			while (table[slot] != 0) {
+				int id = table[slot] - 1;
+				if (hashes[id] == h && equals(id, buf, from, to))
+					return id;
+				slot = (slot + 1) & mask;
+			}
+
+			// add a new id
+			int length = to - from;
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+				hashes = Arrays.copyOf(hashes, size * 2);
+			}
+			if (poolSize + length > pool.length)
+				pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+			for (int i = 0; i < length; i++)
+				pool[poolSize + i] = buf.get(from + i);
+
+			starts[size] = poolSize;
+			lengths[size] = length;
+			hashes[size] = h;
+			poolSize += length;
+			table[slot] = size + 1;
+
+			if (++size * 2 > table.length)
+				rehash();
+			return size - 1;
+		}
+
+		private boolean equals(int id, ByteBuffer buf, int from, int to) {
+			if (lengths[id] != to - from)
+				return false;
+
+			int start = starts[id];
+			for (int i = from; i < to; i++) {
+				if (pool[start++] != buf.get(i))
+					return false;
+			}
+			return true;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int id = 0; id < size; id++) {
+				int slot = hashes[id] & mask;
+				while (table[slot] != 0)
+					slot = (slot + 1) & mask;
+				table[slot] = id + 1;
+			}
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return raw id of a given id
+		 */
+		public String get(int id) {
+			return new String(pool, starts[id], lengths[id], StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Parse a rating file by a given number of threads
+	 *
+	 * @return chunks of the file in order
+	 */
+	public static List<Chunk> parse(final String path, int numThreads) throws Exception {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			final FileChannel channel = file.getChannel();
+			final long[] bounds = split(channel, numThreads);
+			int numChunks = bounds.length - 1;
+
+			List<Chunk> chunks = new ArrayList<>(numChunks);
+			// an empty file has no chunks
+			if (numThreads <= 1 || numChunks <= 1) {
+				for (int i = 0; i < numChunks; i++)
+					chunks.add(parse(channel, bounds[i], bounds[i + 1]));
+				return chunks;
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, numChunks));
+			try {
+				List<Future<Chunk>> futures = new ArrayList<>(numChunks);
+				for (int i = 0; i < numChunks; i++) {
+					final long from = bounds[i], to = bounds[i + 1];
+					futures.add(pool.submit(new Callable<Chunk>() {
+
+						@Override
+						public Chunk call() throws Exception {
+							return parse(channel, from, to);
+						}
+					}));
+				}
+				for (Future<Chunk> f : futures)
+					chunks.add(f.get());
+			} finally {
+				pool.shutdown();
+			}
+			return chunks;
+		}
+	}
+
+	/**
+	 * @return boundaries of chunks, each of which starts at a line
+	 */
+	private static long[] split(FileChannel channel, int numThreads) throws IOException {
+		long size = channel.size();
+		long chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, (size + numThreads - 1) / numThreads));
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long pos = 0;
+		ByteBuffer b = ByteBuffer.allocate(1 << 12);
+		while (pos < size) {
+			long next = pos + chunkSize;
+			if (next >= size) {
+				pos = size;
+			} else {
+				// move to the start of the next line
+				pos = size;
+				while (next < size) {
+					b.clear();
+					int n = channel.read(b, next);
+					int i = 0;
+					while (i < n && b.get(i) != '\n' && b.get(i) != '\r')
+						i++;
+					if (i < n) {
+						pos = next + i + 1;
+						break;
+					}
+					next += n;
+				}
+			}
+			bounds.add(pos);
+		}
+
+		long[] res = new long[bounds.size()];
+		for (int i = 0; i < res.length; i++)
+			res[i] = bounds.get(i);
+		return res;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private static boolean isLineEnd(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Parse bytes [from, to) of a file, which consist of whole lines
+	 */
+	private static Chunk parse(FileChannel channel, long from, long to) throws IOException {
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, from, to - from);
+		int end = buf.limit();
+		Chunk chunk = new Chunk();
+
+		// start and end of user, item and rate of the current tuple
+		int[] fields = new int[6];
+		int pos = 0;
+		boolean first = true;
+		while (pos < end) {
+			byte b = buf.get(pos);
+			if (isLineEnd(b)) {
+				first = true;
+				pos++;
+				continue;
+			}
+
+			// read the fields of a tuple, up to ',' or the end of line
+			int numFields = 0;
+			while (pos < end) {
+				b = buf.get(pos);
+				if (b == ',' || isLineEnd(b))
+					break;
+				if (isSpace(b)) {
+					pos++;
+					continue;
+				}
+
+				int start = pos;
+				while (pos < end && !isSpace(b = buf.get(pos)) && b != ',' && !isLineEnd(b))
+					pos++;
+				if (numFields < 3) {
+					fields[2 * numFields] = start;
+					fields[2 * numFields + 1] = pos;
+				}
+				numFields++;
+			}
+			if (pos < end && buf.get(pos) == ',')
+				pos++;
+
+			// skip empty tuples
+			if (numFields == 0)
+				continue;
+			if (numFields != 3)
+				throw new IOException("Invalid rating at byte " + (from + fields[0]) + ": " + numFields
+						+ " fields, while each rating should be \"user item rate\"");
+
+			int user = chunk.users.id(buf, fields[0], fields[1]);
+			int item = chunk.items.id(buf, fields[2], fields[3]);
+			float rate = parseRate(buf, fields[4], fields[5]);
+			chunk.add(user, item, rate, first);
+			first = false;
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * parse a rate, with a fast path for integers
+	 */
+	private static float parseRate(ByteBuffer buf, int from, int to) {
+		int i = from;
+		boolean negative = buf.get(i) == '-';
+		if (negative || buf.get(i) == '+')
+			i++;
+
+		if (i < to && to - i <= 7) {
+			int val = 0;
+			for (; i < to; i++) {
+				int d = buf.get(i) - '0';
+				if (d < 0 || d > 9)
+					break;
+				val = val * 10 + d;
+			}
+			if (i == to)
+				return negative ? -val : val;
+		}
+
+		byte[] bytes = new byte[to - from];
+		for (int k = 0; k < bytes.length; k++)
+			bytes[k] = buf.get(from + k);
+		return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+	}
+}
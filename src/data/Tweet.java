@@ -1,8 +1,7 @@
 package data;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 public class Tweet implements Serializable {
 
@@ -38,67 +37,79 @@ public class Tweet implements Serializable {
 	}
 
 	public void setText(String[] textStr) {
-		HashMap<Integer, Short> textMap = new HashMap<Integer, Short>();
-		textLength = textStr.length;
-
-		for (String w : textStr) {
-			int wid = Integer.parseInt(w);
-			Short count = textMap.get(wid);
-			if (count == null) {
-				count = 0;
+		int[] words = new int[textStr.length];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = Integer.parseInt(textStr[i]);
+		}
+		setText(words, words.length);
+	}
+
+	/**
+	 * Set text words from the first given number of word ids, which are
+	 * sorted in place and counted by run-length encoding, so that textUnique
+	 * is in ascending order
+	 */
+	public void setText(int[] words, int length) {
+		textLength = length;
+		Arrays.sort(words, 0, length);
+
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || words[i] != words[i - 1]) {
+				n++;
 			}
-			count++;
-			textMap.put(wid, count);
 		}
 
-		textUnique = new int[textMap.size()];
-		textFreq = new short[textMap.size()];
-		int idx = 0;
-		for (Entry<Integer, Short> entry : textMap.entrySet()) {
-			textUnique[idx] = entry.getKey();
-			textFreq[idx] = entry.getValue();
-			idx++;
+		textUnique = new int[n];
+		textFreq = new short[n];
+		int idx = -1;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || words[i] != words[i - 1]) {
+				textUnique[++idx] = words[i];
+			}
+			textFreq[idx]++;
 		}
 	}
 
 	// for missing value
 	public void setText(int wid) {
-		HashMap<Integer, Short> textMap = new HashMap<Integer, Short>();
 		textLength = 1;
+		textUnique = new int[] { wid };
+		textFreq = new short[] { 1 };
+	}
 
-		textMap.put(Integer.valueOf(wid), Short.valueOf("1"));
-
-		textUnique = new int[textMap.size()];
-		textFreq = new short[textMap.size()];
-		int idx = 0;
-		for (Entry<Integer, Short> entry : textMap.entrySet()) {
-			textUnique[idx] = entry.getKey();
-			textFreq[idx] = entry.getValue();
-			idx++;
+	public void setVisual(String[] textStr) {
+		short[] words = new short[textStr.length];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = Short.parseShort(textStr[i]);
 		}
+		setVisual(words, words.length);
 	}
 
-	public void setVisual(String[] textStr) {
-		HashMap<Short, Short> visualMap = new HashMap<Short, Short>();
-		visualLength = textStr.length;
-
-		for (String w : textStr) {
-			short wid = Short.parseShort(w);
-			Short count = visualMap.get(wid);
-			if (count == null) {
-				count = 0;
+	/**
+	 * Set visual words from the first given number of word ids, which are
+	 * sorted in place and counted by run-length encoding, so that
+	 * visualUnique is in ascending order
+	 */
+	public void setVisual(short[] words, int length) {
+		visualLength = length;
+		Arrays.sort(words, 0, length);
+
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || words[i] != words[i - 1]) {
+				n++;
 			}
-			count++;
-			visualMap.put(wid, count);
 		}
 
-		visualUnique = new short[visualMap.size()];
-		visualFreq = new short[visualMap.size()];
-		int idx = 0;
-		for (Entry<Short, Short> entry : visualMap.entrySet()) {
-			visualUnique[idx] = entry.getKey();
-			visualFreq[idx] = entry.getValue();
-			idx++;
+		visualUnique = new short[n];
+		visualFreq = new short[n];
+		int idx = -1;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || words[i] != words[i - 1]) {
+				visualUnique[++idx] = words[i];
+			}
+			visualFreq[idx]++;
 		}
 	}
 }
@@ -0,0 +1,131 @@
+package data;
+
+import java.io.Serializable;
+
+/**
+ * Textual and visual features of all tweets, indexed by inner tweet id.
+ *
+ * Features are stored in CSR form, i.e., the text words of tweet i are
+ * [textPtr[i], textPtr[i + 1]) of textWords and textFreq, and likewise for
+ * visual words. Compared with an array of {@link Tweet}s, all tweets share a
+ * few arrays, which saves the object and array headers per tweet and keeps the
+ * features of consecutive tweets next to each other.
+ */
+public class TweetFeatureStore implements Serializable {
+
+	private static final long serialVersionUID = 3906413251284562170L;
+
+	// flags of a tweet: whether it is given, and whether it has text/visual
+	// words
+	public static final byte TWEET = 1, TEXT = 2, VISUAL = 4;
+
+	public final int numTweets;
+	public final byte[] flags;
+
+	// text words, their frequencies, and the number of words of each tweet
+	public final int[] textPtr, textWords, textLength;
+	public final short[] textFreq;
+
+	// visual words, their frequencies, and the number of words of each tweet
+	public final int[] visualPtr, visualLength;
+	public final short[] visualWords, visualFreq;
+
+	public TweetFeatureStore(byte[] flags, int[] textPtr, int[] textLength, int[] textWords, short[] textFreq,
+			int[] visualPtr, int[] visualLength, short[] visualWords, short[] visualFreq) {
+		this.numTweets = flags.length;
+		this.flags = flags;
+		this.textPtr = textPtr;
+		this.textLength = textLength;
+		this.textWords = textWords;
+		this.textFreq = textFreq;
+		this.visualPtr = visualPtr;
+		this.visualLength = visualLength;
+		this.visualWords = visualWords;
+		this.visualFreq = visualFreq;
+	}
+
+	/**
+	 * Pack the features of tweets, where tweets[i] is the tweet of inner id i
+	 * (or null if not given)
+	 */
+	public TweetFeatureStore(Tweet[] tweets) {
+		numTweets = tweets.length;
+		flags = new byte[numTweets];
+
+		int numText = 0, numVisual = 0;
+		for (int i = 0; i < numTweets; i++) {
+			Tweet t = tweets[i];
+			if (t == null)
+				continue;
+
+			flags[i] = TWEET;
+			if (t.textUnique != null) {
+				flags[i] |= TEXT;
+				numText += t.textUnique.length;
+			}
+			if (t.visualUnique != null) {
+				flags[i] |= VISUAL;
+				numVisual += t.visualUnique.length;
+			}
+		}
+
+		textPtr = new int[numTweets + 1];
+		textLength = new int[numTweets];
+		textWords = new int[numText];
+		textFreq = new short[numText];
+		visualPtr = new int[numTweets + 1];
+		visualLength = new int[numTweets];
+		visualWords = new short[numVisual];
+		visualFreq = new short[numVisual];
+
+		for (int i = 0; i < numTweets; i++) {
+			Tweet t = tweets[i];
+			textPtr[i + 1] = textPtr[i];
+			visualPtr[i + 1] = visualPtr[i];
+
+			if (hasText(i)) {
+				int len = t.textUnique.length;
+				System.arraycopy(t.textUnique, 0, textWords, textPtr[i], len);
+				System.arraycopy(t.textFreq, 0, textFreq, textPtr[i], len);
+				textPtr[i + 1] += len;
+				textLength[i] = t.textLength;
+			}
+			if (hasVisual(i)) {
+				int len = t.visualUnique.length;
+				System.arraycopy(t.visualUnique, 0, visualWords, visualPtr[i], len);
+				System.arraycopy(t.visualFreq, 0, visualFreq, visualPtr[i], len);
+				visualPtr[i + 1] += len;
+				visualLength[i] = t.visualLength;
+			}
+		}
+	}
+
+	/**
+	 * @return whether the features of a tweet are given
+	 */
+	public boolean contains(int tweet) {
+		return (flags[tweet] & TWEET) != 0;
+	}
+
+	public boolean hasText(int tweet) {
+		return (flags[tweet] & TEXT) != 0;
+	}
+
+	public boolean hasVisual(int tweet) {
+		return (flags[tweet] & VISUAL) != 0;
+	}
+
+	/**
+	 * @return number of (unique) text words stored for all tweets
+	 */
+	public int numTextEntries() {
+		return textWords.length;
+	}
+
+	/**
+	 * @return number of (unique) visual words stored for all tweets
+	 */
+	public int numVisualEntries() {
+		return visualWords.length;
+	}
+}
@@ -10,6 +10,14 @@ public class TextMain {
 	public static void main(String[] args) throws Exception {
 
 		Configer cf = new Configer(args[0]);
+		Recommender rec = build(cf, args[0]);
+		rec.execute();
+	}
+
+	/**
+	 * load the datasets and set up the recommender as configured
+	 */
+	public static Recommender build(Configer cf, String configPath) throws Exception {
 
 		String trainRatingPath = cf.getString("dataset.train.rating");
 		String trainTextPath = cf.getString("dataset.train.text");
@@ -23,16 +31,23 @@ public class TextMain {
 			numTextWords += 1;
 		}
 
+		boolean cached = cf.containsKey("dataset.cache") && cf.isOn("dataset.cache");
+		int numThreads = cf.containsKey("num.threads") ? cf.getInt("num.threads") : 1;
+
 		DataDAO trainDao = new DataDAO();
+		trainDao.setCached(cached);
+		trainDao.setNumThreads(numThreads);
 		trainDao.readData(trainRatingPath, trainTextPath, null, replaceMissing, numTextWords);
 
 		DataDAO testDao = new DataDAO(trainDao.getUserIds());
+		testDao.setCached(cached);
+		testDao.setNumThreads(numThreads);
 		testDao.readData(testRatingPath, testTextPath, null, replaceMissing, numTextWords);
 
 		Recommender rec = new TextFactor(trainDao, testDao);
 		rec.algoName = cf.getString("recommender");
-		rec.initParameters(cf, args[0]);
-		rec.execute();
+		rec.initParameters(cf, configPath);
+		return rec;
 	}
 
 }
@@ -3,13 +3,21 @@ package main;
 import data.DataDAO;
 import happy.coding.io.Configer;
 import model.Recommender;
-import model.TextFactor;
+import model.VisualFactor;
 
 public class VisualMain {
 
 	public static void main(String[] args) throws Exception {
 
 		Configer cf = new Configer(args[0]);
+		Recommender rec = build(cf, args[0]);
+		rec.execute();
+	}
+
+	/**
+	 * load the datasets and set up the recommender as configured
+	 */
+	public static Recommender build(Configer cf, String configPath) throws Exception {
 
 		String trainRatingPath = cf.getString("dataset.train.rating");
 		String trainVisualPath = cf.getString("dataset.train.visual");
@@ -18,16 +26,23 @@ public class VisualMain {
 		String testVisualPath = cf.getString("dataset.test.visual");
 
 
+		boolean cached = cf.containsKey("dataset.cache") && cf.isOn("dataset.cache");
+		int numThreads = cf.containsKey("num.threads") ? cf.getInt("num.threads") : 1;
+
 		DataDAO trainDao = new DataDAO();
+		trainDao.setCached(cached);
+		trainDao.setNumThreads(numThreads);
 		trainDao.readData(trainRatingPath, null, trainVisualPath, false, 0);
 
 		DataDAO testDao = new DataDAO(trainDao.getUserIds());
+		testDao.setCached(cached);
+		testDao.setNumThreads(numThreads);
 		testDao.readData(testRatingPath, null, testVisualPath, false, 0);
 
-		Recommender rec = new TextFactor(trainDao, testDao);
+		Recommender rec = new VisualFactor(trainDao, testDao);
 		rec.algoName = cf.getString("recommender");
-		rec.initParameters(cf, args[0]);
-		rec.execute();
+		rec.initParameters(cf, configPath);
+		return rec;
 	}
 
 }
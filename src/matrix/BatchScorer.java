@@ -0,0 +1,128 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Score the candidate items of users block by block. The candidate items of a
+ * block of users are gathered together, and all of their scores are computed
+ * by one matrix multiplication {@code users * items^t} (see
+ * {@link DenseMatrix#multTranspose(double[], int, double[], int, int, double[])}).
+ * A score is then looked up by the column of the item in the result block.
+ * 
+ * If users of a block hardly share candidates, most of the multiplied scores
+ * are useless, and the candidates of the block are scored one by one instead.
+ * 
+ * A scorer reuses its buffers across blocks, and thus is not thread-safe.
+ */
+public class BatchScorer {
+
+	// the minimum fraction of used scores to multiply a whole block: the
+	// multiplication is about twice as fast per score as separate inner
+	// products, which pays off if at least half of the scores are used
+	private static final double MIN_DENSITY = 0.5;
+
+	private final DenseMatrix userFactors, itemFactors;
+	private final SparseMatrix candidates;
+	private final int numFactors;
+
+	// the current block of users [from, to), and whether it is multiplied
+	private int from, to;
+	private boolean dense;
+
+	// the candidate items of the current block, and the position of each item
+	// in it (-1 if not a candidate)
+	private int[] blockItems;
+	private int numBlockItems;
+	private final int[] itemPos;
+
+	// buffers of row-major user factors, item factors and scores
+	private double[] users, items, scores;
+
+	/**
+	 * @param userFactors
+	 *            latent factors of users
+	 * @param itemFactors
+	 *            latent factors of items, with as many columns as userFactors
+	 * @param candidates
+	 *            a user-item matrix whose non-zero entries are candidates
+	 */
+	public BatchScorer(DenseMatrix userFactors, DenseMatrix itemFactors, SparseMatrix candidates) {
+		assert userFactors.numColumns == itemFactors.numColumns;
+
+		this.userFactors = userFactors;
+		this.itemFactors = itemFactors;
+		this.candidates = candidates;
+		this.numFactors = userFactors.numColumns;
+
+		blockItems = new int[16];
+		itemPos = new int[candidates.numColumns];
+		Arrays.fill(itemPos, -1);
+	}
+
+	/**
+	 * Score all candidates of users [from, to)
+	 */
+	public void score(int from, int to) {
+		// reset the positions of the last block
+		for (int i = 0; i < numBlockItems; i++)
+			itemPos[blockItems[i]] = -1;
+		numBlockItems = 0;
+
+		this.from = from;
+		this.to = to;
+
+		// gather the candidate items of the block
+		int numCandidates = 0;
+		for (int u = from; u < to; u++) {
+			for (int k = candidates.rowPtr[u]; k < candidates.rowPtr[u + 1]; k++) {
+				if (candidates.rowData[k] == 0)
+					continue;
+
+				numCandidates++;
+				int j = candidates.colInd[k];
+				if (itemPos[j] < 0) {
+					if (numBlockItems == blockItems.length)
+						blockItems = Arrays.copyOf(blockItems, numBlockItems * 2);
+					itemPos[j] = numBlockItems;
+					blockItems[numBlockItems++] = j;
+				}
+			}
+		}
+
+		int numBlockUsers = to - from;
+		dense = numCandidates >= MIN_DENSITY * numBlockUsers * numBlockItems;
+		if (!dense)
+			return;
+
+		users = ensure(users, numBlockUsers * numFactors);
+		for (int u = from; u < to; u++)
+			userFactors.copyRow(u, users, (u - from) * numFactors);
+
+		items = ensure(items, numBlockItems * numFactors);
+		for (int i = 0; i < numBlockItems; i++)
+			itemFactors.copyRow(blockItems[i], items, i * numFactors);
+
+		scores = ensure(scores, numBlockUsers * numBlockItems);
+		DenseMatrix.multTranspose(users, numBlockUsers, items, numBlockItems, numFactors, scores);
+	}
+
+	/**
+	 * @param u
+	 *            a user of the last scored block
+	 * @param j
+	 *            a candidate item of user u
+	 * @return the score of user u on item j
+	 */
+	public double get(int u, int j) {
+		assert u >= from && u < to && itemPos[j] >= 0;
+
+		if (dense)
+			return scores[(u - from) * numBlockItems + itemPos[j]];
+		else
+			return DenseMatrix.rowMult(userFactors, u, itemFactors, j);
+	}
+
+	private static double[] ensure(double[] buffer, int size) {
+		return buffer != null && buffer.length >= size ? buffer : new double[size];
+	}
+}
@@ -18,7 +18,6 @@
 
 package matrix;
 
-import happy.coding.io.Strings;
 import happy.coding.math.Randoms;
 
 import java.io.Serializable;
@@ -32,22 +31,28 @@ import java.util.Random;
 /**
  * Data Structure: dense matrix <br>
  * 
- * A big reason that we do not adopt original DenseMatrix from M4J libraray is
- * because the latter using one-dimensional array to store data, which will
- * often cause OutOfMemory exception due to the limit of maximum length of a
- * one-dimensional Java array.
+ * Entries are stored row by row in one contiguous array (row-major, with a
+ * stride of {@code numColumns}), so that the rows touched together in a
+ * training step are close in memory and a whole matrix can be copied in bulk.
+ * As a consequence, the number of entries is limited by the maximum length of
+ * a one-dimensional Java array.
  * 
  * @author guoguibing
  * 
  */
 public class DenseMatrix implements Serializable {
 
-	private static final long serialVersionUID = -2069621030647530185L;
+	private static final long serialVersionUID = -2069621030647530186L;
+
+	// the maximum length of an array supported by most JVMs
+	private static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+	// number of rows of the second matrix kept in cache by multTranspose
+	private static final int BLOCK_SIZE = 64;
 
 	// dimension
 	protected int numRows, numColumns;
-	// read data
-	protected double[][] data;
+	// read data: entry [row, column] is at data[row * numColumns + column]
+	protected double[] data;
 
 	/**
 	 * Construct a dense matrix with specified dimensions
@@ -58,10 +63,20 @@ public class DenseMatrix implements Serializable {
 	 *            number of columns
 	 */
 	public DenseMatrix(int numRows, int numColumns) {
+		this(numRows, numColumns, true);
+	}
+
+	/**
+	 * Construct a dense matrix with specified dimensions, where the (double)
+	 * data array is only allocated on request, used by subclasses with a
+	 * different storage
+	 */
+	protected DenseMatrix(int numRows, int numColumns, boolean allocate) {
 		this.numRows = numRows;
 		this.numColumns = numColumns;
 
-		data = new double[numRows][numColumns];
+		if (allocate)
+			data = new double[size()];
 	}
 
 	/**
@@ -75,16 +90,15 @@ public class DenseMatrix implements Serializable {
 
 		for (int i = 0; i < numRows; i++)
 			for (int j = 0; j < numColumns; j++)
-				data[i][j] = array[i][j];
+				data[i * numColumns + j] = array[i][j];
 	}
 	
 	// wrap a vector as a N*1 matrix
 	public DenseMatrix(DenseVector vec) {
-		this(vec.data.length, 1);
-		double[] d = vec.data;
+		this(vec.size, 1);
 		
-		for (int i=0; i<d.length; i++) {
-			data[i][0] = d[i];
+		for (int i=0; i<numRows; i++) {
+			data[i] = vec.get(i);
 		}
 	}
 	
@@ -97,7 +111,10 @@ public class DenseMatrix implements Serializable {
 	 *            input matrix
 	 */
 	public DenseMatrix(DenseMatrix mat) {
-		this(mat.data);
+		this(mat.numRows, mat.numColumns);
+
+		for (int i = 0; i < numRows; i++)
+			mat.copyRow(i, data, i * numColumns);
 	}
 
 	/**
@@ -107,6 +124,24 @@ public class DenseMatrix implements Serializable {
 		return new DenseMatrix(this);
 	}
 
+	/**
+	 * Copy all entries of a matrix with the same dimensions into current
+	 * matrix, which reuses the current storage instead of allocating a new
+	 * matrix as {@link #clone()} does
+	 * 
+	 * @param mat
+	 *            a matrix with the same dimensions
+	 */
+	public void copyFrom(DenseMatrix mat) {
+		assert numRows == mat.numRows && numColumns == mat.numColumns;
+
+		if (mat.data != null)
+			System.arraycopy(mat.data, 0, data, 0, data.length);
+		else
+			for (int i = 0; i < numRows; i++)
+				mat.copyRow(i, data, i * numColumns);
+	}
+
 	/**
 	 * Construct an identity matrix
 	 * 
@@ -130,39 +165,35 @@ public class DenseMatrix implements Serializable {
 	 * when the number of factors is large) which can cause bad performance.
 	 */
 	public void init(double mean, double sigma) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.gaussian(mean, sigma);
+		for (int i = 0, n = size(); i < n; i++)
+			setEntry(i, Randoms.gaussian(mean, sigma));
 	}
 	
 	public void initUniformFactor(double min, double max, int factor) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.uniform(min, max)/factor; // [0,1)/factor
+		for (int i = 0, n = size(); i < n; i++)
+			setEntry(i, Randoms.uniform(min, max)/factor); // [0,1)/factor
 	}
 	
 	public void initUniform(double min, double max) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.uniform(min, max); 
+		for (int i = 0, n = size(); i < n; i++)
+			setEntry(i, Randoms.uniform(min, max)); 
 	}
 	
 	public void initSimple() {
 		Random rdm = new Random();
 		double  sqr = Math.sqrt(3);
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++) {
-				double r = rdm.nextDouble();
-				double val = -1;
-				if (r<=0.167) {
-					val = sqr;
-				} else if (r<=0.833) {
-					val = 0;
-				} else {
-					val = -sqr;
-				}
-				data[i][j] = val;
+		for (int i = 0, n = size(); i < n; i++) {
+			double r = rdm.nextDouble();
+			double val = -1;
+			if (r<=0.167) {
+				val = sqr;
+			} else if (r<=0.833) {
+				val = 0;
+			} else {
+				val = -sqr;
 			}
+			setEntry(i, val);
+		}
 	}
 	
 	
@@ -172,9 +203,8 @@ public class DenseMatrix implements Serializable {
 	 */
 	public void init(double range) {
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.uniform(0, range);
+		for (int i = 0, n = size(); i < n; i++)
+			setEntry(i, Randoms.uniform(0, range));
 	}
 
 	/**
@@ -189,9 +219,8 @@ public class DenseMatrix implements Serializable {
 	 * initialize a dense matrix with small random values in (0, 1)
 	 */
 	public void uniformUnit(double small) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = small;
+		for (int i = 0, n = size(); i < n; i++)
+			setEntry(i, small);
 	}
 
 	/**
@@ -208,6 +237,31 @@ public class DenseMatrix implements Serializable {
 		return numColumns;
 	}
 
+	/**
+	 * @return number of entries, i.e., {@code numRows * numColumns}
+	 */
+	public int size() {
+		long size = (long) numRows * numColumns;
+		if (size > MAX_SIZE)
+			throw new IllegalArgumentException("Matrix " + numRows + "x" + numColumns
+					+ " is too large to be stored in one array");
+		return (int) size;
+	}
+
+	/**
+	 * @return the entry at a given index of the row-major data
+	 */
+	protected double getEntry(int index) {
+		return data[index];
+	}
+
+	/**
+	 * Set a value to the entry at a given index of the row-major data
+	 */
+	protected void setEntry(int index, double val) {
+		data[index] = val;
+	}
+
 	/**
 	 * @param rowId
 	 *            row id
@@ -223,11 +277,124 @@ public class DenseMatrix implements Serializable {
 	 *            row id
 	 * @param deep
 	 *            whether to copy data or only shallow copy for executing
-	 *            speedup purpose
+	 *            speedup purpose; a shallow row writes through to the matrix
+	 *            by {@link DenseVector#set(int, double)} and alike, but does
+	 *            not hand out its data, and is only supported by matrices
+	 *            stored in a double array
 	 * @return a vector of a specific row
 	 */
 	public DenseVector row(int rowId, boolean deep) {
-		return new DenseVector(data[rowId], deep);
+		int from = rowId * numColumns;
+		if (deep)
+			return new DenseVector(Arrays.copyOfRange(data, from, from + numColumns), false);
+		else
+			return new DenseVector(data, from, numColumns);
+	}
+
+	/**
+	 * Copy the data of a row into a given array
+	 * 
+	 * @param row
+	 *            row id
+	 * @param dst
+	 *            destination array
+	 * @param offset
+	 *            start position in the destination array
+	 */
+	public void copyRow(int row, double[] dst, int offset) {
+		System.arraycopy(data, row * numColumns, dst, offset, numColumns);
+	}
+
+	/**
+	 * Do vector operation {@code vec = vec + row * val}
+	 * 
+	 * @param row
+	 *            row id
+	 * @param val
+	 *            scale of the row
+	 * @param vec
+	 *            a vector of length {@code numColumns}, updated in place
+	 */
+	public void addRowTo(int row, double val, double[] vec) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++)
+			vec[j] += data[from + j] * val;
+	}
+
+	/**
+	 * Do one step of gradient descent on a row, where the gradient consists of
+	 * {@code vec * coef} and the regularization {@code row * reg}, i.e.,
+	 * {@code row = row - (vec * coef + row * reg) * lRate}
+	 * 
+	 * @param row
+	 *            row id
+	 * @param vec
+	 *            a vector of length {@code numColumns}
+	 */
+	public void gradientStep(int row, double[] vec, double coef, double reg,
+			double lRate) {
+		gradientStep(row, vec, 0, coef, reg, lRate);
+	}
+
+	/**
+	 * Do one step of gradient descent on a row as
+	 * {@link #gradientStep(int, double[], double, double, double)}, where the
+	 * vector starts at a given offset of an array
+	 */
+	public void gradientStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = data[from + j];
+			double sgd = vec[offset + j] * coef + old * reg;
+			data[from + j] = old - sgd * lRate;
+		}
+	}
+
+	/**
+	 * Do one step of AdaGrad on a row with the gradient of
+	 * {@link #gradientStep(int, double[], int, double, double, double)}, where
+	 * each entry is scaled by {@code lRate / (sqrt(G) + epsilon)}
+	 *
+	 * @param sumSquares
+	 *            sums of squared gradients G, laid out as the matrix
+	 */
+	public void adaGradStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate, double[] sumSquares, double epsilon) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = data[from + j];
+			double grad = vec[offset + j] * coef + old * reg;
+			double g2 = sumSquares[from + j] += grad * grad;
+			data[from + j] = old - lRate * grad / (Math.sqrt(g2) + epsilon);
+		}
+	}
+
+	/**
+	 * Do one step of Adam on a row with the gradient of
+	 * {@link #gradientStep(int, double[], int, double, double, double)}
+	 *
+	 * @param m
+	 *            first moment estimates, laid out as the matrix
+	 * @param v
+	 *            second moment estimates, laid out as the matrix
+	 * @param correction1
+	 *            bias correction of m, i.e., {@code 1 - beta1^t}
+	 * @param correction2
+	 *            bias correction of v, i.e., {@code 1 - beta2^t}
+	 */
+	public void adamStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate, double[] m, double[] v, double beta1,
+			double beta2, double correction1, double correction2,
+			double epsilon) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = data[from + j];
+			double grad = vec[offset + j] * coef + old * reg;
+			double mj = m[from + j] = beta1 * m[from + j] + (1 - beta1) * grad;
+			double vj = v[from + j] = beta2 * v[from + j] + (1 - beta2) * grad * grad;
+			data[from + j] = old - lRate * (mj / correction1) / (Math.sqrt(vj / correction2) + epsilon);
+		}
 	}
 
 	/**
@@ -239,7 +406,7 @@ public class DenseMatrix implements Serializable {
 		DenseVector vec = new DenseVector(numRows);
 
 		for (int i = 0; i < numRows; i++)
-			vec.set(i, data[i][column]);
+			vec.set(i, get(i, column));
 
 		return vec;
 	}
@@ -255,7 +422,7 @@ public class DenseMatrix implements Serializable {
 		double sum = 0.0f;
 
 		for (int i = 0; i < numRows; i++)
-			sum += data[i][column];
+			sum += get(i, column);
 
 		return sum / numRows;
 	}
@@ -264,24 +431,25 @@ public class DenseMatrix implements Serializable {
 	 * @return the matrix norm-2
 	 */
 	public double norm() {
-		double res = 0.0f;
-
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res += data[i][j] * data[i][j];
-
-		return  Math.sqrt(res);
+		return  Math.sqrt(normSquare());
 	}
 
 	/**
 	 * @return the matrix norm-2
 	 */
 	public double normSquare() {
+		return normSquare(0, numRows);
+	}
+
+	/**
+	 * @return the squared norm-2 of rows [fromRow, toRow), so that the norm of
+	 *         a matrix can be computed block by block
+	 */
+	public double normSquare(int fromRow, int toRow) {
 		double res = 0;
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res += data[i][j] * data[i][j];
+		for (int i = fromRow * numColumns, end = toRow * numColumns; i < end; i++)
+			res += data[i] * data[i];
 
 		return res;
 	}
@@ -369,19 +537,94 @@ public class DenseMatrix implements Serializable {
 	public DenseMatrix mult(DenseMatrix mat) {
 		assert this.numColumns == mat.numRows;
 
-		DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
-		for (int i = 0; i < res.numRows; i++) {
-			for (int j = 0; j < res.numColumns; j++) {
+		// rows of the transposed matrix are columns of mat, which makes both
+		// operands be read row by row
+		return multTranspose(mat.transpose());
+	}
 
-				double product = 0.0f;
-				for (int k = 0; k < this.numColumns; k++)
-					product += data[i][k] * mat.data[k][j];
+	/**
+	 * Matrix multiplication with the transpose of a dense matrix, i.e.,
+	 * {@code this * mat^t}, whose entry [i, j] is the inner product of row i
+	 * of current matrix and row j of {@code mat}
+	 * 
+	 * @param mat
+	 *            a dense matrix with the same number of columns
+	 * @return a dense matrix with results of matrix multiplication
+	 */
+	public DenseMatrix multTranspose(DenseMatrix mat) {
+		assert this.numColumns == mat.numColumns;
 
-				res.set(i, j, product);
+		// single-precision matrices are multiplied by a double copy
+		DenseMatrix m = data != null ? this : new DenseMatrix(this);
+		DenseMatrix n = mat.data != null ? mat : new DenseMatrix(mat);
+
+		DenseMatrix res = new DenseMatrix(numRows, mat.numRows);
+		multTranspose(m.data, numRows, n.data, mat.numRows, numColumns, res.data);
+
+		return res;
+	}
+
+	/**
+	 * Cache-blocked matrix multiplication {@code res = a * b^t} of row-major
+	 * arrays. Rows of {@code b} are processed in blocks, each of which stays in
+	 * cache while being multiplied by all rows of {@code a}. Each entry is
+	 * summed in the order of columns, so that it equals the inner product of
+	 * the two rows.
+	 * 
+	 * @param a
+	 *            an aRows x numColumns matrix
+	 * @param b
+	 *            a bRows x numColumns matrix
+	 * @param res
+	 *            an aRows x bRows matrix, overwritten by the results
+	 */
+	public static void multTranspose(double[] a, int aRows, double[] b, int bRows, int numColumns, double[] res) {
+		for (int from = 0; from < bRows; from += BLOCK_SIZE) {
+			int to = Math.min(bRows, from + BLOCK_SIZE);
+
+			// 2 x 2 entries at a time, which keeps four independent sums
+			int i = 0;
+			for (; i + 1 < aRows; i += 2) {
+				int a0 = i * numColumns, a1 = a0 + numColumns;
+				int r0 = i * bRows, r1 = r0 + bRows;
+
+				int j = from;
+				for (; j + 1 < to; j += 2) {
+					int b0 = j * numColumns, b1 = b0 + numColumns;
+
+					double p00 = 0, p01 = 0, p10 = 0, p11 = 0;
+					for (int k = 0; k < numColumns; k++) {
+						double x0 = a[a0 + k], x1 = a[a1 + k];
+						double y0 = b[b0 + k], y1 = b[b1 + k];
+						p00 += x0 * y0;
+						p01 += x0 * y1;
+						p10 += x1 * y0;
+						p11 += x1 * y1;
+					}
+
+					res[r0 + j] = p00;
+					res[r0 + j + 1] = p01;
+					res[r1 + j] = p10;
+					res[r1 + j + 1] = p11;
+				}
+				if (j < to) {
+					res[r0 + j] = inner(a, a0, b, j * numColumns, numColumns);
+					res[r1 + j] = inner(a, a1, b, j * numColumns, numColumns);
+				}
+			}
+			if (i < aRows) {
+				for (int j = from; j < to; j++)
+					res[i * bRows + j] = inner(a, i * numColumns, b, j * numColumns, numColumns);
 			}
 		}
+	}
 
-		return res;
+	private static double inner(double[] a, int aFrom, double[] b, int bFrom, int length) {
+		double product = 0;
+		for (int k = 0; k < length; k++)
+			product += a[aFrom + k] * b[bFrom + k];
+
+		return product;
 	}
 
 	/**
@@ -403,7 +646,7 @@ public class DenseMatrix implements Serializable {
 
 				double product = 0.0f;
 				for (VectorEntry ve : col)
-					product += data[i][ve.index()] * ve.get();
+					product += get(i, ve.index()) * ve.get();
 
 				res.set(i, j, product);
 			}
@@ -435,7 +678,7 @@ public class DenseMatrix implements Serializable {
 
 			double product = 0;
 			for (VectorEntry ve : vec)
-				product += data[i][ve.index()] * ve.get();
+				product += get(i, ve.index()) * ve.get();
 
 			res.set(i, product);
 		}
@@ -463,7 +706,7 @@ public class DenseMatrix implements Serializable {
 
 				double product = 0;
 				for (int k : row.getIndex())
-					product += row.get(k) * dm.data[k][j];
+					product += row.get(k) * dm.get(k, j);
 
 				res.set(i, j, product);
 			}
@@ -473,7 +716,30 @@ public class DenseMatrix implements Serializable {
 
 	}
 
+	/**
+	 * @return a copy of matrix data as a 2D array, to which writes are lost
+	 * @deprecated the rows are no longer stored as arrays of their own, so
+	 *             this copies the whole matrix rather than returning its rows;
+	 *             use {@link #getFlatData()} to access the data in place, or
+	 *             {@link #copyRow} to read a row
+	 */
+	@Deprecated
 	public double[][] getData() {
+		double[][] res = new double[numRows][];
+		for (int i = 0; i < numRows; i++)
+			res[i] = row(i).data;
+
+		return res;
+	}
+
+	/**
+	 * @return reference to the row-major data of current matrix, where entry
+	 *         [row, column] is at index {@code row * numColumns + column}.
+	 *         Only supported by matrices stored in a double array; code that
+	 *         may get other matrices uses {@link #copyRow}, {@link #addRowTo},
+	 *         {@link #gradientStep} and {@link #normSquare} instead.
+	 */
+	public double[] getFlatData() {
 		return data;
 	}
 
@@ -481,21 +747,21 @@ public class DenseMatrix implements Serializable {
 	 * Get the value at entry [row, column]
 	 */
 	public double get(int row, int column) {
-		return data[row][column];
+		return data[row * numColumns + column];
 	}
 
 	/**
 	 * Set a value to entry [row, column]
 	 */
 	public void set(int row, int column, double val) {
-		data[row][column] = val;
+		data[row * numColumns + column] = val;
 	}
 
 	/**
 	 * Add a value to entry [row, column]
 	 */
 	public void add(int row, int column, double val) {
-		data[row][column] += val;
+		data[row * numColumns + column] += val;
 	}
 
 	/**
@@ -503,9 +769,8 @@ public class DenseMatrix implements Serializable {
 	 */
 	public DenseMatrix scale(double val) {
 		DenseMatrix mat = new DenseMatrix(numRows, numColumns);
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				mat.data[i][j] = this.data[i][j] * val;
+		for (int i = 0; i < mat.data.length; i++)
+			mat.data[i] = this.getEntry(i) * val;
 
 		return mat;
 	}
@@ -521,9 +786,8 @@ public class DenseMatrix implements Serializable {
 
 		DenseMatrix res = new DenseMatrix(numRows, numColumns);
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] + mat.data[i][j];
+		for (int i = 0; i < res.data.length; i++)
+			res.data[i] = getEntry(i) + mat.getEntry(i);
 
 		return res;
 	}
@@ -555,9 +819,8 @@ public class DenseMatrix implements Serializable {
 
 		DenseMatrix res = new DenseMatrix(numRows, numColumns);
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] + val;
+		for (int i = 0; i < res.data.length; i++)
+			res.data[i] = getEntry(i) + val;
 
 		return res;
 	}
@@ -573,18 +836,16 @@ public class DenseMatrix implements Serializable {
 
 		DenseMatrix res = new DenseMatrix(numRows, numColumns);
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] - mat.data[i][j];
+		for (int i = 0; i < res.data.length; i++)
+			res.data[i] = getEntry(i) - mat.getEntry(i);
 
 		return res;
 	}
 	
 	
 	public  void minusAssign(DenseMatrix mat) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				this.data[i][j] -= mat.data[i][j];
+		for (int i = 0, n = size(); i < n; i++)
+			this.setEntry(i, getEntry(i) - mat.getEntry(i));
 	}
 
 	/**
@@ -614,9 +875,8 @@ public class DenseMatrix implements Serializable {
 
 		DenseMatrix res = new DenseMatrix(numRows, numColumns);
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] - val;
+		for (int i = 0; i < res.data.length; i++)
+			res.data[i] = getEntry(i) - val;
 
 		return res;
 	}
@@ -637,8 +897,8 @@ public class DenseMatrix implements Serializable {
 				for (int k = 0; k < j; k++)
 					sum += L.get(i, k) * L.get(j, k);
 
-				double val = i == j ? Math.sqrt(data[i][i] - sum)
-						: (data[i][j] - sum) / L.get(j, j);
+				double val = i == j ? Math.sqrt(get(i, i) - sum)
+						: (get(i, j) - sum) / L.get(j, j);
 				L.set(i, j, val);
 			}
 			if (Double.isNaN(L.get(i, i)))
@@ -656,7 +916,7 @@ public class DenseMatrix implements Serializable {
 
 		for (int i = 0; i < mat.numRows; i++)
 			for (int j = 0; j < mat.numColumns; j++)
-				mat.set(i, j, this.data[j][i]);
+				mat.set(i, j, this.get(j, i));
 
 		return mat;
 	}
@@ -877,7 +1137,8 @@ public class DenseMatrix implements Serializable {
 	 *            value to be set
 	 */
 	public void setRow(int row, double val) {
-		Arrays.fill(data[row], val);
+		for (int j = 0; j < numColumns; j++)
+			set(row, j, val);
 	}
 
 	/**
@@ -890,20 +1151,34 @@ public class DenseMatrix implements Serializable {
 	 */
 	public void setRow(int row, DenseVector vals) {
 		for (int j = 0; j < numColumns; j++)
-			data[row][j] = vals.data[j];
+			set(row, j, vals.get(j));
 	}
 
 	/**
 	 * clear and reset all entries to 0
 	 */
 	public void clear() {
-		for (int i = 0; i < numRows; i++)
-			setRow(i, 0.0f);
+		uniformUnit(0.0);
 	}
 
 	@Override
 	public String toString() {
-		return Strings.toString(data);
+		// as Strings.toString(double[][]), a row at a time
+		StringBuilder sb = new StringBuilder();
+		sb.append("Dimension: " + numRows + " x " + numColumns + "\n");
+
+		double[] row = new double[numColumns];
+		for (int i = 0; i < numRows; i++) {
+			copyRow(i, row, 0);
+			sb.append("[");
+			for (int j = 0; j < numColumns; j++) {
+				if (j > 0)
+					sb.append("\t");
+				sb.append((float) row[j]);
+			}
+			sb.append("]\n");
+		}
+		return sb.toString();
 	}
 
 }
@@ -33,7 +33,11 @@ public class DenseVector implements Serializable {
 	private static final long serialVersionUID = -2930574547913792430L;
 
 	protected int size;
-	public double[] data;
+	// a vector may be a view on a part of a larger array (e.g., a matrix row),
+	// in which case entry [index] is at data[offset + index]; the array is
+	// only handed out by getData() if the vector owns it as a whole
+	protected double[] data;
+	protected int offset;
 
 	/**
 	 * Construct a dense vector with a specific size
@@ -72,22 +76,37 @@ public class DenseVector implements Serializable {
 		}
 	}
 
+	/**
+	 * Construct a dense vector as a view (shallow copy) on a range of a given
+	 * array
+	 * 
+	 * @param array
+	 *            a given data array
+	 * @param offset
+	 *            index of the first entry of the vector in the array
+	 * @param size
+	 *            the size of vector
+	 */
+	public DenseVector(double[] array, int offset, int size) {
+		this.size = size;
+		this.offset = offset;
+		data = array;
+	}
+
 	// override the values
 	public DenseVector assign(DenseVector vec) {
-		double[] array = vec.data;
 		if (data == null) {
-			data = new double[array.length];
-			size = array.length;
+			data = new double[vec.size];
+			size = vec.size;
 		}
 
-		for (int i = 0; i < size; i++)
-			data[i] = array[i];
+		System.arraycopy(vec.data, vec.offset, data, offset, size);
 		return this;
 	}
 
 	public void reset() {
 		for (int i = 0; i < size; i++) {
-			data[i] = 0;
+			data[offset + i] = 0;
 		}
 	}
 
@@ -95,7 +114,9 @@ public class DenseVector implements Serializable {
 	 * Construct a dense vector by deeply copying data from a given vector
 	 */
 	public DenseVector(DenseVector vec) {
-		this(vec.data);
+		this(vec.size);
+
+		System.arraycopy(vec.data, vec.offset, data, 0, size);
 	}
 
 	/**
@@ -110,7 +131,7 @@ public class DenseVector implements Serializable {
 	 */
 	public void init(double mean, double sigma) {
 		for (int i = 0; i < size; i++)
-			data[i] = Randoms.gaussian(mean, sigma);
+			data[offset + i] = Randoms.gaussian(mean, sigma);
 	}
 
 	/**
@@ -118,7 +139,7 @@ public class DenseVector implements Serializable {
 	 */
 	public void init() {
 		for (int i = 0; i < size; i++)
-			data[i] = Randoms.uniform();
+			data[offset + i] = Randoms.uniform();
 	}
 
 	/**
@@ -126,7 +147,7 @@ public class DenseVector implements Serializable {
 	 */
 	public void init(double range) {
 		for (int i = 0; i < size; i++)
-			data[i] = Randoms.uniform(0, range);
+			data[offset + i] = Randoms.uniform(0, range);
 	}
 	
 	
@@ -135,13 +156,21 @@ public class DenseVector implements Serializable {
 	 * Get a value at entry [index]
 	 */
 	public double get(int idx) {
-		return data[idx];
+		return data[offset + idx];
 	}
 
 	/**
-	 * @return vector's data
+	 * @return vector's data, which is written through to the vector
+	 * @throws UnsupportedOperationException
+	 *             if this vector is a view on a larger array, e.g., a row of
+	 *             {@link DenseMatrix#row(int, boolean)}; use {@link #get(int)}
+	 *             and {@link #set(int, double)}, or the data of a
+	 *             {@link #clone()} instead
 	 */
 	public double[] getData() {
+		if (offset != 0 || data.length != size)
+			throw new UnsupportedOperationException("The data of a vector view is part of a larger array");
+
 		return data;
 	}
 
@@ -150,10 +179,10 @@ public class DenseVector implements Serializable {
 	 */
 	public double mean() {
 		double sum = 0.0f;
-		for (double d : data) {
-			sum += d;
+		for (int i = 0; i < size; i++) {
+			sum += data[offset + i];
 		}
-		return sum / data.length;
+		return sum / size;
 		// return Stats.mean(data);
 	}
 
@@ -161,21 +190,21 @@ public class DenseVector implements Serializable {
 	 * Set a value to entry [index]
 	 */
 	public void set(int idx, double val) {
-		data[idx] = val;
+		data[offset + idx] = val;
 	}
 
 	/**
 	 * Add a value to entry [index]
 	 */
 	public void add(int idx, double val) {
-		data[idx] += val;
+		data[offset + idx] += val;
 	}
 
 	/**
 	 * Substract a value from entry [index]
 	 */
 	public void minus(int idx, double val) {
-		data[idx] -= val;
+		data[offset + idx] -= val;
 	}
 
 	/**
@@ -185,7 +214,7 @@ public class DenseVector implements Serializable {
 		DenseVector result = new DenseVector(size);
 
 		for (int i = 0; i < size; i++)
-			result.data[i] = this.data[i] + val;
+			result.data[i] = this.data[offset + i] + val;
 
 		return result;
 	}
@@ -195,7 +224,7 @@ public class DenseVector implements Serializable {
 			return add(val);
 		} else {
 			for (int i = 0; i < size; i++)
-				this.data[i] += val;
+				this.data[offset + i] += val;
 
 			return this;
 		}
@@ -210,7 +239,7 @@ public class DenseVector implements Serializable {
 		DenseVector result = new DenseVector(size);
 
 		for (int i = 0; i < size; i++)
-			result.data[i] = this.data[i] - val;
+			result.data[i] = this.data[offset + i] - val;
 
 		return result;
 	}
@@ -220,7 +249,7 @@ public class DenseVector implements Serializable {
 			return minus(val);
 		} else {
 			for (int i = 0; i < size; i++)
-				this.data[i] -= -val;
+				this.data[offset + i] -= -val;
 			return this;
 		}
 	}
@@ -233,7 +262,7 @@ public class DenseVector implements Serializable {
 
 		DenseVector result = new DenseVector(size);
 		for (int i = 0; i < size; i++)
-			result.data[i] = this.data[i] * val;
+			result.data[i] = this.data[offset + i] * val;
 
 		return result;
 	}
@@ -243,14 +272,14 @@ public class DenseVector implements Serializable {
 			return scale(val);
 		} else {
 			for (int i = 0; i < size; i++)
-				this.data[i] *= val;
+				this.data[offset + i] *= val;
 			return this;
 		}
 	}
 
 	public DenseVector scaleAssign(DenseVector vec, double val) {
 		for (int i = 0; i < size; i++)
-			this.data[i] = vec.get(i) * val;
+			this.data[offset + i] = vec.get(i) * val;
 		return this;
 	}
 
@@ -264,7 +293,7 @@ public class DenseVector implements Serializable {
 
 		DenseVector result = new DenseVector(size);
 		for (int i = 0; i < result.size; i++)
-			result.data[i] = this.data[i] + vec.data[i];
+			result.data[i] = this.data[offset + i] + vec.data[vec.offset + i];
 
 		return result;
 	}
@@ -275,7 +304,7 @@ public class DenseVector implements Serializable {
 		} else {
 			assert size == vec.size;
 			for (int i = 0; i < vec.size; i++)
-				this.data[i] += vec.data[i];
+				this.data[offset + i] += vec.data[vec.offset + i];
 
 			return this;
 		}
@@ -283,14 +312,14 @@ public class DenseVector implements Serializable {
 
 	public DenseVector add(DenseVector vec, DenseVector vec2) {
 		for (int i = 0; i < vec.size; i++)
-			this.data[i] += vec.data[i] + vec2.data[i];
+			this.data[offset + i] += vec.data[vec.offset + i] + vec2.data[vec2.offset + i];
 
 		return this;
 	}
 
 	public DenseVector addAssign(DenseVector vec, DenseVector vec2) {
 		for (int i = 0; i < vec.size; i++)
-			this.data[i] = vec.data[i] + vec2.data[i];
+			this.data[offset + i] = vec.data[vec.offset + i] + vec2.data[vec2.offset + i];
 
 		return this;
 	}
@@ -305,7 +334,7 @@ public class DenseVector implements Serializable {
 
 		DenseVector result = new DenseVector(size);
 		for (int i = 0; i < vec.size; i++)
-			result.data[i] = this.data[i] - vec.data[i];
+			result.data[i] = this.data[offset + i] - vec.data[vec.offset + i];
 
 		return result;
 	}
@@ -316,7 +345,7 @@ public class DenseVector implements Serializable {
 		} else {
 			assert size == vec.size;
 			for (int i = 0; i < vec.size; i++)
-				this.data[i] -= vec.data[i];
+				this.data[offset + i] -= vec.data[vec.offset + i];
 
 			return this;
 		}
@@ -324,41 +353,41 @@ public class DenseVector implements Serializable {
 
 	// K*1 (vector) -> 1*K (matrix)
 	public DenseMatrix vectorToTransMatrix() {
-		int length = data.length;
+		int length = size;
 		DenseMatrix matrix = new DenseMatrix(1, length);
 		for (int i = 0; i < length; i++)
-			matrix.data[0][i] = this.data[i];
+			matrix.data[i] = this.data[offset + i];
 		return matrix;
 	}
 
 	// K*1 (vector) -> K*1 (matrix)
 	public DenseMatrix vectorToMatrix() {
-		int length = data.length;
+		int length = size;
 		DenseMatrix matrix = new DenseMatrix(length, 1);
 		for (int i = 0; i < length; i++)
-			matrix.data[i][0] = this.data[i];
+			matrix.data[i] = this.data[offset + i];
 		return matrix;
 	}
 
 	// new matrix(this-vec)^T
 	public DenseMatrix minusAsTransMatrix(DenseVector vec) {
-		DenseMatrix matrix = new DenseMatrix(1, vec.data.length);
+		DenseMatrix matrix = new DenseMatrix(1, vec.size);
 		for (int i = 0; i < vec.size; i++)
-			matrix.data[0][i] = this.data[i] - vec.data[i];
+			matrix.data[i] = this.get(i) - vec.get(i);
 		return matrix;
 	}
 
 	// new matrix(this-vec)
 	public DenseMatrix minusAsMatrix(DenseVector vec) {
-		DenseMatrix matrix = new DenseMatrix(vec.data.length, 1);
+		DenseMatrix matrix = new DenseMatrix(vec.size, 1);
 		for (int i = 0; i < vec.size; i++)
-			matrix.data[i][0] = this.data[i] - vec.data[i];
+			matrix.data[i] = this.get(i) - vec.get(i);
 		return matrix;
 	}
 
 	public DenseVector minusAssign(DenseVector vec, DenseVector vec2) {
 		for (int i = 0; i < size; i++)
-			this.data[i] = vec.data[i] - vec2.data[i];
+			this.data[offset + i] = vec.data[vec.offset + i] - vec2.data[vec2.offset + i];
 		return this;
 	}
 
@@ -366,7 +395,7 @@ public class DenseVector implements Serializable {
 	public DenseVector minusScale(DenseVector vec, double d) {
 		assert size == vec.size;
 		for (int i = 0; i < vec.size; i++)
-			this.data[i] -= vec.data[i] * d;
+			this.data[offset + i] -= vec.data[vec.offset + i] * d;
 
 		return this;
 	}
@@ -377,7 +406,7 @@ public class DenseVector implements Serializable {
 		if (deep) {
 			DenseVector result = new DenseVector(size);
 			for (int i = 0; i < vec.size; i++)
-				result.data[i] -= vec.data[i] * d;
+				result.data[i] -= vec.data[vec.offset + i] * d;
 			return result;
 		} else {
 			return minusScale(vec, d);
@@ -388,7 +417,7 @@ public class DenseVector implements Serializable {
 	public DenseVector addScale(DenseVector vec, double d) {
 		assert size == vec.size;
 		for (int i = 0; i < vec.size; i++)
-			this.data[i] += vec.data[i] * d;
+			this.data[offset + i] += vec.data[vec.offset + i] * d;
 
 		return this;
 	}
@@ -399,7 +428,7 @@ public class DenseVector implements Serializable {
 		if (deep) {
 			DenseVector result = new DenseVector(size);
 			for (int i = 0; i < vec.size; i++)
-				result.data[i] += vec.data[i] * d;
+				result.data[i] += vec.data[vec.offset + i] * d;
 			return result;
 		} else {
 			return addScale(vec, d);
@@ -410,7 +439,7 @@ public class DenseVector implements Serializable {
 	public DenseVector scaleAddScale(double d1, DenseVector vec, double d2) {
 		assert size == vec.size;
 		for (int i = 0; i < vec.size; i++)
-			this.data[i] = this.data[i] * d1 + vec.data[i] * d2;
+			this.data[offset + i] = this.data[offset + i] * d1 + vec.data[vec.offset + i] * d2;
 
 		return this;
 	}
@@ -422,7 +451,7 @@ public class DenseVector implements Serializable {
 		if (deep) {
 			DenseVector result = new DenseVector(size);
 			for (int i = 0; i < vec.size; i++)
-				result.data[i] = this.data[i] * d1 + vec.data[i] * d2;
+				result.data[i] = this.data[offset + i] * d1 + vec.data[vec.offset + i] * d2;
 			return result;
 		} else {
 			return scaleAddScale(d1, vec, d2);
@@ -458,7 +487,7 @@ public class DenseVector implements Serializable {
 	public double innerAddScale(DenseVector vec1, DenseVector vec2, double d) {
 		double result = 0;
 		for (int i = 0; i < vec1.size; i++) {
-			result += this.data[i] * (vec1.get(i) + vec2.get(i) * d);
+			result += this.data[offset + i] * (vec1.get(i) + vec2.get(i) * d);
 		}
 		return result;
 	}
@@ -498,7 +527,7 @@ public class DenseVector implements Serializable {
 		StringBuilder sb = new StringBuilder();
 		sb.append(size + ": ");
 		for (int i = 0; i < size; i++) {
-			sb.append(data[i] + " ");
+			sb.append(data[offset + i] + " ");
 		}
 		return sb.toString().trim();
 	}
@@ -509,7 +538,7 @@ public class DenseVector implements Serializable {
 	public double normSquare() {
 		double res = 0;
 		for (int i = 0; i < size; i++)
-			res += data[i] * data[i];
+			res += data[offset + i] * data[offset + i];
 		return res;
 	}
 
@@ -524,7 +553,7 @@ public class DenseVector implements Serializable {
 			for (int i = 0; i < length; i++) {
 				int w = words[i];
 				short f = freq[i];
-				s.assign(Q.row(w, false));
+				Q.copyRow(w, s.data, s.offset);
 				if (f > 1) {
 					s = s.scale(f, false);
 				}
@@ -545,7 +574,7 @@ public class DenseVector implements Serializable {
 			for (int i = 0; i < length; i++) {
 				int w = words[i];
 				short f = freq[i];
-				s.assign(Q.row(w, false));
+				Q.copyRow(w, s.data, s.offset);
 				if (f > 1) {
 					s = s.scale(f, false);
 				}
@@ -566,7 +595,7 @@ public class DenseVector implements Serializable {
 			for (int i = 0; i < length; i++) {
 				int w = words[i];
 				short f = freq[i];
-				DenseVector s = Q.row(w, false);
+				DenseVector s = Q.row(w);
 				DenseVector proj = F.mult(s);
 				if (f > 1) {
 					proj = proj.scale(f, false);
@@ -594,7 +623,7 @@ public class DenseVector implements Serializable {
 			for (int i = 0; i < length; i++) {
 				short w = words[i];
 				short f = freq[i];
-				DenseVector s = Q.row(w, false);
+				DenseVector s = Q.row(w);
 				proj.assign(F.mult(s));
 				if (f > 1) {
 					proj = proj.scale(f, false);
@@ -0,0 +1,193 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Data Structure: dense matrix in single precision <br>
+ *
+ * Entries are stored as floats in one row-major array, which halves the memory
+ * and the memory bandwidth of a {@link DenseMatrix}. All computations are still
+ * done in double precision, and results are only rounded when being stored.
+ *
+ * Rows cannot be shared with a (double) {@link DenseVector}: a shallow
+ * {@code row(rowId, false)} and {@link #getFlatData()} throw an
+ * {@link UnsupportedOperationException} rather than hand out copies whose
+ * writes would be lost. Rows are accessed by {@link #copyRow},
+ * {@link #addRowTo}, {@link #gradientStep}, {@link #adaGradStep} and
+ * {@link #adamStep} instead.
+ */
+public class FloatDenseMatrix extends DenseMatrix {
+
+	private static final long serialVersionUID = 2383961632467521846L;
+
+	// read data: entry [row, column] is at fdata[row * numColumns + column]
+	protected float[] fdata;
+
+	/**
+	 * Construct a dense matrix with specified dimensions
+	 */
+	public FloatDenseMatrix(int numRows, int numColumns) {
+		super(numRows, numColumns, false);
+
+		fdata = new float[size()];
+	}
+
+	/**
+	 * Construct a dense matrix by copying (and rounding) data from a given
+	 * matrix
+	 */
+	public FloatDenseMatrix(DenseMatrix mat) {
+		this(mat.numRows, mat.numColumns);
+
+		for (int i = 0; i < fdata.length; i++)
+			fdata[i] = (float) mat.getEntry(i);
+	}
+
+	/**
+	 * Make a deep copy of current matrix
+	 */
+	@Override
+	public FloatDenseMatrix clone() {
+		FloatDenseMatrix mat = new FloatDenseMatrix(numRows, numColumns);
+		System.arraycopy(fdata, 0, mat.fdata, 0, fdata.length);
+
+		return mat;
+	}
+
+	@Override
+	public void copyFrom(DenseMatrix mat) {
+		assert numRows == mat.numRows && numColumns == mat.numColumns;
+
+		if (mat instanceof FloatDenseMatrix)
+			System.arraycopy(((FloatDenseMatrix) mat).fdata, 0, fdata, 0, fdata.length);
+		else
+			for (int i = 0; i < fdata.length; i++)
+				fdata[i] = (float) mat.getEntry(i);
+	}
+
+	@Override
+	protected double getEntry(int index) {
+		return fdata[index];
+	}
+
+	@Override
+	protected void setEntry(int index, double val) {
+		fdata[index] = (float) val;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		return fdata[row * numColumns + column];
+	}
+
+	@Override
+	public void set(int row, int column, double val) {
+		fdata[row * numColumns + column] = (float) val;
+	}
+
+	@Override
+	public void add(int row, int column, double val) {
+		fdata[row * numColumns + column] += val;
+	}
+
+	/**
+	 * @return a copy of a specific row
+	 * @throws UnsupportedOperationException
+	 *             if a shallow row is requested
+	 */
+	@Override
+	public DenseVector row(int rowId, boolean deep) {
+		if (!deep)
+			throw new UnsupportedOperationException("Single-precision matrix has no shallow rows");
+
+		DenseVector vec = new DenseVector(numColumns);
+		copyRow(rowId, vec.data, 0);
+
+		return vec;
+	}
+
+	@Override
+	public void copyRow(int row, double[] dst, int offset) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++)
+			dst[offset + j] = fdata[from + j];
+	}
+
+	@Override
+	public void addRowTo(int row, double val, double[] vec) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++)
+			vec[j] += fdata[from + j] * val;
+	}
+
+	@Override
+	public void gradientStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = fdata[from + j];
+			double sgd = vec[offset + j] * coef + old * reg;
+			fdata[from + j] = (float) (old - sgd * lRate);
+		}
+	}
+
+	@Override
+	public void adaGradStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate, double[] sumSquares, double epsilon) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = fdata[from + j];
+			double grad = vec[offset + j] * coef + old * reg;
+			double g2 = sumSquares[from + j] += grad * grad;
+			fdata[from + j] = (float) (old - lRate * grad / (Math.sqrt(g2) + epsilon));
+		}
+	}
+
+	@Override
+	public void adamStep(int row, double[] vec, int offset, double coef,
+			double reg, double lRate, double[] m, double[] v, double beta1,
+			double beta2, double correction1, double correction2,
+			double epsilon) {
+		int from = row * numColumns;
+		for (int j = 0; j < numColumns; j++) {
+			double old = fdata[from + j];
+			double grad = vec[offset + j] * coef + old * reg;
+			double mj = m[from + j] = beta1 * m[from + j] + (1 - beta1) * grad;
+			double vj = v[from + j] = beta2 * v[from + j] + (1 - beta2) * grad * grad;
+			fdata[from + j] = (float) (old - lRate * (mj / correction1) / (Math.sqrt(vj / correction2) + epsilon));
+		}
+	}
+
+	@Override
+	public double normSquare(int fromRow, int toRow) {
+		double res = 0;
+
+		for (int i = fromRow * numColumns, end = toRow * numColumns; i < end; i++)
+			res += (double) fdata[i] * fdata[i];
+
+		return res;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(fdata, 0.0f);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException
+	 *             as the data are not stored in a double array
+	 */
+	@Override
+	public double[] getFlatData() {
+		throw new UnsupportedOperationException(
+				"Single-precision matrix has no double data");
+	}
+
+	/**
+	 * @return reference to the row-major data of current matrix
+	 */
+	public float[] getFloatData() {
+		return fdata;
+	}
+
+}
@@ -0,0 +1,286 @@
+package matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Data Structure: read-only dense matrix mapped from a binary model file <br>
+ *
+ * A model file consists of a header (magic, version, number of rows, number
+ * of columns, and bytes per entry, i.e., 8 for double and 4 for float
+ * precision), followed by the entries row by row in little-endian order. The
+ * file is memory-mapped rather than parsed, so that loading a model costs
+ * nothing until its rows are used, and processes serving the same model share
+ * the pages of the file.
+ *
+ * Rows are mapped in chunks of at most {@link #CHUNK_SIZE} bytes, as a single
+ * mapping is limited to 2GB. Any modification throws an
+ * {@link UnsupportedOperationException}; {@link #clone()} returns a mutable
+ * copy on the heap, which is also what a mapped matrix is serialized as.
+ */
+public class MappedDenseMatrix extends DenseMatrix {
+
+	private static final long serialVersionUID = -5437283129401592765L;
+
+	private static final int MAGIC = 0x46414d4d; // "FAMM"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int CHUNK_SIZE = 1 << 30;
+
+	// bytes per entry, and number of rows per chunk
+	private final int entrySize, chunkRows;
+	private transient ByteBuffer[] chunks;
+
+	private MappedDenseMatrix(int numRows, int numColumns, int entrySize) {
+		super(numRows, numColumns, false);
+
+		this.entrySize = entrySize;
+		this.chunkRows = Math.max(1, CHUNK_SIZE / Math.max(1, numColumns * entrySize));
+	}
+
+	/**
+	 * Write a matrix as a binary model file, in single precision if it is a
+	 * {@link FloatDenseMatrix}, or double precision otherwise
+	 */
+	public static void write(DenseMatrix mat, String path) throws IOException {
+		boolean single = mat instanceof FloatDenseMatrix;
+		int numColumns = mat.numColumns;
+
+		// write to a temporary file of this writer first, so that a model being
+		// mapped by other processes is replaced as a whole
+		File target = new File(path).getAbsoluteFile();
+		File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+				FileChannel channel = file.getChannel();
+
+				ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(1 << 20, numColumns * 8)).order(
+						ByteOrder.LITTLE_ENDIAN);
+				buf.putInt(MAGIC).putInt(VERSION).putInt(mat.numRows).putInt(numColumns).putInt(single ? 4 : 8);
+				buf.position(HEADER_SIZE);
+
+				double[] row = new double[numColumns];
+				for (int i = 0; i < mat.numRows; i++) {
+					if (buf.remaining() < numColumns * 8)
+						flush(channel, buf);
+
+					mat.copyRow(i, row, 0);
+					for (int j = 0; j < numColumns; j++) {
+						if (single)
+							buf.putFloat((float) row[j]);
+						else
+							buf.putDouble(row[j]);
+					}
+				}
+				flush(channel, buf);
+			}
+
+			// replace the model file in one step, so that it is either the old
+			// or the new model even if the process crashes
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			// removes a partial model file on failure, and nothing once moved
+			tmp.delete();
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+
+	/**
+	 * Map a binary model file written by {@link #write(DenseMatrix, String)}
+	 */
+	public static MappedDenseMatrix map(String path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0)
+				;
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException(path + " is not a binary model file");
+
+			int numRows = header.getInt(), numColumns = header.getInt(), entrySize = header.getInt();
+			if (entrySize != 4 && entrySize != 8)
+				throw new IOException(path + " has entries of invalid size " + entrySize);
+
+			long rowSize = (long) numColumns * entrySize;
+			if (channel.size() != HEADER_SIZE + numRows * rowSize)
+				throw new IOException(path + " is truncated");
+
+			// the mappings remain valid after the file is closed
+			MappedDenseMatrix mat = new MappedDenseMatrix(numRows, numColumns, entrySize);
+			int rows = mat.chunkRows;
+			mat.chunks = new ByteBuffer[(numRows + rows - 1) / rows];
+			for (int c = 0; c < mat.chunks.length; c++) {
+				long from = HEADER_SIZE + c * rows * rowSize;
+				long size = Math.min(rows, numRows - c * rows) * rowSize;
+				mat.chunks[c] = channel.map(MapMode.READ_ONLY, from, size).order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			return mat;
+		}
+	}
+
+	/**
+	 * @return whether the entries are stored in single precision
+	 */
+	public boolean isSinglePrecision() {
+		return entrySize == 4;
+	}
+
+	/**
+	 * Make a mutable copy of current matrix on the heap
+	 */
+	@Override
+	public DenseMatrix clone() {
+		return isSinglePrecision() ? new FloatDenseMatrix(this) : new DenseMatrix(this);
+	}
+
+	/**
+	 * Serialize a mapped matrix as its copy on the heap, as the mapping cannot
+	 * be restored
+	 */
+	private Object writeReplace() {
+		return clone();
+	}
+
+	@Override
+	public void copyFrom(DenseMatrix mat) {
+		throw readOnly();
+	}
+
+	@Override
+	protected double getEntry(int index) {
+		return get(index / numColumns, index % numColumns);
+	}
+
+	@Override
+	protected void setEntry(int index, double val) {
+		throw readOnly();
+	}
+
+	@Override
+	public double get(int row, int column) {
+		ByteBuffer chunk = chunks[row / chunkRows];
+		int pos = ((row % chunkRows) * numColumns + column) * entrySize;
+
+		return entrySize == 8 ? chunk.getDouble(pos) : chunk.getFloat(pos);
+	}
+
+	@Override
+	public void set(int row, int column, double val) {
+		throw readOnly();
+	}
+
+	@Override
+	public void add(int row, int column, double val) {
+		throw readOnly();
+	}
+
+	/**
+	 * @return a copy of a specific row
+	 * @throws UnsupportedOperationException
+	 *             if a shallow row is requested
+	 */
+	@Override
+	public DenseVector row(int rowId, boolean deep) {
+		if (!deep)
+			throw new UnsupportedOperationException("Mapped matrix has no shallow rows");
+
+		DenseVector vec = new DenseVector(numColumns);
+		copyRow(rowId, vec.data, 0);
+
+		return vec;
+	}
+
+	@Override
+	public void copyRow(int row, double[] dst, int offset) {
+		ByteBuffer chunk = chunks[row / chunkRows];
+		int pos = (row % chunkRows) * numColumns * entrySize;
+
+		if (entrySize == 8) {
+			for (int j = 0; j < numColumns; j++, pos += 8)
+				dst[offset + j] = chunk.getDouble(pos);
+		} else {
+			for (int j = 0; j < numColumns; j++, pos += 4)
+				dst[offset + j] = chunk.getFloat(pos);
+		}
+	}
+
+	@Override
+	public void addRowTo(int row, double val, double[] vec) {
+		ByteBuffer chunk = chunks[row / chunkRows];
+		int pos = (row % chunkRows) * numColumns * entrySize;
+
+		if (entrySize == 8) {
+			for (int j = 0; j < numColumns; j++, pos += 8)
+				vec[j] += chunk.getDouble(pos) * val;
+		} else {
+			for (int j = 0; j < numColumns; j++, pos += 4)
+				vec[j] += chunk.getFloat(pos) * val;
+		}
+	}
+
+	@Override
+	public void gradientStep(int row, double[] vec, int offset, double coef, double reg, double lRate) {
+		throw readOnly();
+	}
+
+	@Override
+	public void adaGradStep(int row, double[] vec, int offset, double coef, double reg, double lRate,
+			double[] sumSquares, double epsilon) {
+		throw readOnly();
+	}
+
+	@Override
+	public void adamStep(int row, double[] vec, int offset, double coef, double reg, double lRate, double[] m,
+			double[] v, double beta1, double beta2, double correction1, double correction2, double epsilon) {
+		throw readOnly();
+	}
+
+	@Override
+	public double normSquare(int fromRow, int toRow) {
+		double res = 0;
+
+		for (int i = fromRow; i < toRow; i++) {
+			for (int j = 0; j < numColumns; j++) {
+				double val = get(i, j);
+				res += val * val;
+			}
+		}
+
+		return res;
+	}
+
+	@Override
+	public void clear() {
+		throw readOnly();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException
+	 *             as the data are not stored in a double array
+	 */
+	@Override
+	public double[] getFlatData() {
+		throw new UnsupportedOperationException("Mapped matrix has no double data");
+	}
+
+	private UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("Mapped matrix is read-only");
+	}
+}
@@ -77,6 +77,104 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 		this(rows, cols, dataTable, null);
 	}
 
+	/**
+	 * Construct a sparse matrix with both CRS and CCS structures from
+	 * (row, column, value) triplets, sorted by counting sort without boxing.
+	 * If an entry is given more than once, its last value is kept.
+	 * 
+	 * @param rowIds
+	 *            row of each triplet
+	 * @param colIds
+	 *            column of each triplet
+	 * @param vals
+	 *            value of each triplet
+	 * @param size
+	 *            number of triplets
+	 */
+	public SparseMatrix(int rows, int cols, int[] rowIds, int[] colIds, float[] vals, int size) {
+		numRows = rows;
+		numColumns = cols;
+
+		for (int k = 0; k < size; k++) {
+			if (rowIds[k] < 0 || rowIds[k] >= numRows)
+				throw new IllegalArgumentException("rowInd[" + k + "]=" + rowIds[k]
+						+ ", which is not a valid row index");
+			if (colIds[k] < 0 || colIds[k] >= numColumns)
+				throw new IllegalArgumentException("colInd[" + k + "]=" + colIds[k]
+						+ ", which is not a valid column index");
+		}
+
+		// stable sort by column and then by row, so that triplets are ordered
+		// by (row, column), and duplicates keep their order
+		int[] byCol = countingSort(colIds, null, size, numColumns);
+		int[] order = countingSort(rowIds, byCol, size, numRows);
+
+		// CRS, with the last one of duplicates
+		rowPtr = new int[numRows + 1];
+		colInd = new int[size];
+		rowData = new float[size];
+
+		int nnz = 0;
+		for (int i = 0; i < size; i++) {
+			int k = order[i];
+			if (nnz > 0 && i > 0 && rowIds[order[i - 1]] == rowIds[k] && colInd[nnz - 1] == colIds[k]) {
+				rowData[nnz - 1] = vals[k];
+				continue;
+			}
+			colInd[nnz] = colIds[k];
+			rowData[nnz] = vals[k];
+			rowPtr[rowIds[k] + 1]++;
+			nnz++;
+		}
+		for (int i = 0; i < numRows; i++)
+			rowPtr[i + 1] += rowPtr[i];
+		colInd = Arrays.copyOf(colInd, nnz);
+		rowData = Arrays.copyOf(rowData, nnz);
+
+		// CCS: scanning CRS row by row keeps rows sorted in each column
+		colPtr = new int[numColumns + 1];
+		rowInd = new int[nnz];
+		colData = new float[nnz];
+
+		for (int j = 0; j < nnz; j++)
+			colPtr[colInd[j] + 1]++;
+		for (int j = 0; j < numColumns; j++)
+			colPtr[j + 1] += colPtr[j];
+
+		int[] next = Arrays.copyOf(colPtr, numColumns);
+		for (int row = 0; row < numRows; row++) {
+			for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
+				int pos = next[colInd[j]]++;
+				rowInd[pos] = row;
+				colData[pos] = rowData[j];
+			}
+		}
+	}
+
+	/**
+	 * Stable counting sort of (a subset of) triplets by their keys
+	 * 
+	 * @param keys
+	 *            keys of triplets in [0, numKeys)
+	 * @param order
+	 *            the triplets to sort in order, or null for all triplets
+	 * @return the triplets sorted by keys
+	 */
+	private static int[] countingSort(int[] keys, int[] order, int size, int numKeys) {
+		int[] start = new int[numKeys + 1];
+		for (int k = 0; k < size; k++)
+			start[keys[k] + 1]++;
+		for (int i = 0; i < numKeys; i++)
+			start[i + 1] += start[i];
+
+		int[] res = new int[size];
+		for (int i = 0; i < size; i++) {
+			int k = order == null ? i : order[i];
+			res[start[keys[k]]++] = k;
+		}
+		return res;
+	}
+
 	/**
 	 * Construct a sparse matrix with CRS structures (CCS structure optional).
 	 * 
@@ -0,0 +1,299 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import data.RatingTuple;
+import data.TweetFeatureStore;
+import matrix.DenseMatrix;
+
+/**
+ * The BPR training step shared by the FAMF models. A tweet is represented by
+ * the average of its textual word factors (rows of T) and/or visual word
+ * factors (rows of V), whose words are read from a {@link TweetFeatureStore};
+ * a model without text or visual features simply leaves T or V as null.
+ *
+ * All intermediate vectors live in scratch buffers owned by the kernel, so
+ * that no object is allocated per tuple. A kernel is not thread-safe: each
+ * training thread must use its own instance.
+ *
+ * Besides per-tuple SGD, a kernel can take mini-batch steps, where the
+ * gradients of a batch of tuples are computed with the factors before the
+ * batch, summed up per row, and applied to each touched row once.
+ */
+public class BPRKernel {
+
+	private final Recommender model;
+	private final int numFactors;
+	// whether visual word frequencies are used to weigh the visual average
+	private final boolean visualFreq;
+
+	// scratch buffers: user factor, averaged factors of pos/neg tweets, and
+	// the gradient of user factor
+	private final double[] pu, tPos, tNeg, vPos, vNeg, diff;
+	// gradients of U, T and V accumulated in a mini-batch, allocated by the
+	// first batch
+	private RowGradients gradU, gradT, gradV;
+
+	public BPRKernel(Recommender model, boolean visualFreq) {
+		this.model = model;
+		this.numFactors = model.numSharedFactors;
+		this.visualFreq = visualFreq;
+
+		pu = new double[numFactors];
+		tPos = new double[numFactors];
+		tNeg = new double[numFactors];
+		vPos = new double[numFactors];
+		vNeg = new double[numFactors];
+		diff = new double[numFactors];
+	}
+
+	/**
+	 * one SGD step on a (user, positive tweet, negative tweet) tuple
+	 *
+	 * @return the training error of the tuple
+	 */
+	public double update(RatingTuple tuple) {
+		return step(tuple, false);
+	}
+
+	/**
+	 * one mini-batch step on tuples [from, to) of a list, where the gradient
+	 * of each row is the sum of its gradients over the batch, including the
+	 * regularization once per occurrence
+	 *
+	 * @return the training error of the batch
+	 */
+	public double update(List<RatingTuple> tuples, int from, int to) {
+		DenseMatrix U = model.U, T = model.T, V = model.V;
+		if (gradU == null) {
+			gradU = new RowGradients(U.numRows(), numFactors);
+			if (T != null)
+				gradT = new RowGradients(T.numRows(), numFactors);
+			if (V != null)
+				gradV = new RowGradients(V.numRows(), numFactors);
+		}
+
+		double err = 0;
+		for (int i = from; i < to; i++)
+			err += step(tuples.get(i), true);
+
+		float lRate = model.lRate;
+		gradU.apply(U, model.optU, model.regU, lRate);
+		if (T != null)
+			gradT.apply(T, model.optT, model.regT, lRate);
+		if (V != null)
+			gradV.apply(V, model.optV, model.regV, lRate);
+
+		return err;
+	}
+
+	/**
+	 * compute the gradients of a tuple, which are applied at once, or
+	 * accumulated into the gradients of a mini-batch
+	 *
+	 * @return the training error of the tuple
+	 */
+	private double step(RatingTuple tuple, boolean batch) {
+		DenseMatrix U = model.U, T = model.T, V = model.V;
+		float lRate = model.lRate;
+
+		TweetFeatureStore fs = model.trainDao.features;
+		int uid = tuple.user, pos = tuple.posId, neg = tuple.negId;
+
+		/********** get necessary data structure *********/
+		// keep the old user factor, which is used to update word factors
+		U.copyRow(uid, pu, 0);
+
+		double z_t_k = 0, z_t_h = 0, z_v_k = 0, z_v_h = 0;
+		if (T != null) {
+			z_t_k = Math.sqrt(fs.textLength[pos]);
+			z_t_h = Math.sqrt(fs.textLength[neg]);
+			averageText(fs, pos, z_t_k, T, tPos);
+			averageText(fs, neg, z_t_h, T, tNeg);
+		}
+		if (V != null) {
+			z_v_k = Math.sqrt(fs.visualLength[pos]);
+			z_v_h = Math.sqrt(fs.visualLength[neg]);
+			averageVisual(fs, pos, z_v_k, V, vPos);
+			averageVisual(fs, neg, z_v_h, V, vNeg);
+		}
+
+		// prediction
+		double pred_pos = 0, pred_neg = 0;
+		for (int f = 0; f < numFactors; f++) {
+			pred_pos += pu[f] * (tPos[f] + vPos[f]);
+			pred_neg += pu[f] * (tNeg[f] + vNeg[f]);
+		}
+
+		double err = Math.log(1 + Math.exp(pred_neg - pred_pos));
+		double e = 1.0 / (1.0 + Math.exp(pred_pos - pred_neg));
+
+		/************** Updating parameters ******************/
+		// update factors for user
+		for (int f = 0; f < numFactors; f++)
+			diff[f] = (tPos[f] - tNeg[f]) + (vPos[f] - vNeg[f]);
+		if (batch)
+			gradU.add(uid, diff, -e);
+		else
+			model.optU.update(U, uid, diff, 0, -e, model.regU, lRate);
+
+		// update textual factor
+		if (T != null) {
+			RowGradients grad = batch ? gradT : null;
+			update(fs.textWords, fs.textPtr[pos], fs.textPtr[pos + 1], -e / z_t_k, model.regT, lRate, T, model.optT, grad);
+			update(fs.textWords, fs.textPtr[neg], fs.textPtr[neg + 1], e / z_t_h, model.regT, lRate, T, model.optT, grad);
+		}
+
+		// update visual factor
+		if (V != null) {
+			RowGradients grad = batch ? gradV : null;
+			update(fs.visualWords, fs.visualPtr[pos], fs.visualPtr[pos + 1], -e / z_v_k, model.regV, lRate, V, model.optV, grad);
+			update(fs.visualWords, fs.visualPtr[neg], fs.visualPtr[neg + 1], e / z_v_h, model.regV, lRate, V, model.optV, grad);
+		}
+
+		return err;
+	}
+
+	/**
+	 * compute the latent factor of a tweet, i.e., the sum of its averaged
+	 * textual and visual word factors, as used by {@link #update(RatingTuple)}
+	 *
+	 * @param fs
+	 *            features of tweets
+	 * @param tweet
+	 *            inner id of the tweet
+	 * @param dst
+	 *            destination array
+	 * @param offset
+	 *            start position in the destination array
+	 */
+	public void itemFactor(TweetFeatureStore fs, int tweet, double[] dst, int offset) {
+		DenseMatrix T = model.T, V = model.V;
+
+		if (T != null)
+			averageText(fs, tweet, Math.sqrt(fs.textLength[tweet]), T, tPos);
+		if (V != null)
+			averageVisual(fs, tweet, Math.sqrt(fs.visualLength[tweet]), V, vPos);
+
+		for (int f = 0; f < numFactors; f++)
+			dst[offset + f] = tPos[f] + vPos[f];
+	}
+
+	/**
+	 * average the frequency weighted text word factors of a tweet into a given
+	 * buffer
+	 */
+	private void averageText(TweetFeatureStore fs, int tweet, double total, DenseMatrix Q, double[] avg) {
+		Arrays.fill(avg, 0);
+		int from = fs.textPtr[tweet], to = fs.textPtr[tweet + 1];
+		if (from == to || total == 0.0)
+			return;
+
+		for (int i = from; i < to; i++)
+			Q.addRowTo(fs.textWords[i], fs.textFreq[i], avg);
+		scale(avg, 1.0 / total);
+	}
+
+	/**
+	 * average the (frequency weighted) visual word factors of a tweet into a
+	 * given buffer
+	 */
+	private void averageVisual(TweetFeatureStore fs, int tweet, double total, DenseMatrix Q, double[] avg) {
+		Arrays.fill(avg, 0);
+		int from = fs.visualPtr[tweet], to = fs.visualPtr[tweet + 1];
+		if (from == to)
+			return;
+
+		for (int i = from; i < to; i++)
+			Q.addRowTo(fs.visualWords[i], visualFreq ? fs.visualFreq[i] : 1, avg);
+		scale(avg, 1.0 / total);
+	}
+
+	private void scale(double[] vec, double val) {
+		for (int k = 0; k < numFactors; k++)
+			vec[k] *= val;
+	}
+
+	/**
+	 * update the factors of words [from, to) by an optimizer, the gradient of
+	 * which is {@code pu * coef} (+ regularization), or accumulate the
+	 * gradients if {@code grad} is given
+	 */
+	private void update(int[] words, int from, int to, double coef, float reg, float lRate, DenseMatrix Q,
+			Optimizer opt, RowGradients grad) {
+		for (int j = from; j < to; j++) {
+			if (grad != null)
+				grad.add(words[j], pu, coef);
+			else
+				opt.update(Q, words[j], pu, 0, coef, reg, lRate);
+		}
+	}
+
+	private void update(short[] words, int from, int to, double coef, float reg, float lRate, DenseMatrix Q,
+			Optimizer opt, RowGradients grad) {
+		for (int j = from; j < to; j++) {
+			if (grad != null)
+				grad.add(words[j], pu, coef);
+			else
+				opt.update(Q, words[j], pu, 0, coef, reg, lRate);
+		}
+	}
+
+	/**
+	 * Sparse gradients of the rows of a factor matrix touched in a mini-batch:
+	 * the sum of gradient vectors and the number of gradients of each row
+	 */
+	private static class RowGradients {
+		private final int numFactors;
+		// slot of each row, or -1 if the row is not touched
+		private final int[] slots;
+
+		private int size;
+		private int[] rows = new int[64], counts = new int[64];
+		private double[] sums;
+
+		RowGradients(int numRows, int numFactors) {
+			this.numFactors = numFactors;
+			slots = new int[numRows];
+			Arrays.fill(slots, -1);
+			sums = new double[rows.length * numFactors];
+		}
+
+		/**
+		 * add the gradient {@code vec * coef} of a row
+		 */
+		void add(int row, double[] vec, double coef) {
+			int slot = slots[row];
+			if (slot < 0) {
+				if (size == rows.length) {
+					rows = Arrays.copyOf(rows, size * 2);
+					counts = Arrays.copyOf(counts, size * 2);
+					sums = Arrays.copyOf(sums, size * 2 * numFactors);
+				}
+				slot = size++;
+				slots[row] = slot;
+				rows[slot] = row;
+				counts[slot] = 0;
+				Arrays.fill(sums, slot * numFactors, (slot + 1) * numFactors, 0);
+			}
+
+			counts[slot]++;
+			int offset = slot * numFactors;
+			for (int f = 0; f < numFactors; f++)
+				sums[offset + f] += vec[f] * coef;
+		}
+
+		/**
+		 * apply the accumulated gradients to each touched row once by an
+		 * optimizer, and clear them for the next batch
+		 */
+		void apply(DenseMatrix Q, Optimizer opt, float reg, float lRate) {
+			for (int s = 0; s < size; s++) {
+				opt.update(Q, rows[s], sums, s * numFactors, 1, reg * counts[s], lRate);
+				slots[rows[s]] = -1;
+			}
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package model;
+
+import happy.coding.io.FileIO;
+import happy.coding.io.Logs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import matrix.DenseMatrix;
+import matrix.MappedDenseMatrix;
+
+/**
+ * Save checkpoints of factor matrices in the background, so that training
+ * goes on while a checkpoint is being written.
+ *
+ * A checkpoint is a snapshot (bulk copy) of the matrices taken by the caller,
+ * which is written by a single background thread as binary model files (see
+ * {@link MappedDenseMatrix}). At most one checkpoint is pending: a new
+ * checkpoint first waits for the previous one, which bounds the memory of
+ * snapshots.
+ *
+ * The matrices of a checkpoint must be consistent as a set, so they are
+ * written into a temporary folder, which is then renamed to iter_n/ in the
+ * checkpoint folder. Only then the manifest file "latest" is replaced (again
+ * by a rename) with the name of the new checkpoint, and older checkpoints are
+ * deleted. After a crash, the manifest thus names a complete checkpoint, and
+ * {@link #resolve(String)} only loads that one.
+ */
+public class Checkpointer {
+
+	// manifest naming the latest complete checkpoint
+	public static final String MANIFEST = "latest";
+	private static final String PREFIX = "iter_", TMP_SUFFIX = ".tmp";
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "checkpointer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	// the checkpoint being written
+	private Future<Void> pending;
+
+	/**
+	 * Take a snapshot of the given matrices and write them in the background
+	 *
+	 * @param folder
+	 *            folder of the checkpoints
+	 * @param iteration
+	 *            iteration of the checkpoint
+	 * @param matrices
+	 *            {name, matrix} of the matrices to save, where a null matrix
+	 *            is skipped
+	 */
+	public void save(final String folder, final int iteration, Map<String, DenseMatrix> matrices) throws Exception {
+		await();
+
+		final Map<String, DenseMatrix> snapshot = new LinkedHashMap<>();
+		for (Entry<String, DenseMatrix> en : matrices.entrySet()) {
+			if (en.getValue() != null)
+				snapshot.put(en.getKey(), en.getValue().clone());
+		}
+
+		pending = writer.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				write(new File(folder), PREFIX + iteration, snapshot);
+				return null;
+			}
+		});
+	}
+
+	private static void write(File folder, String name, Map<String, DenseMatrix> snapshot) throws Exception {
+		File tmp = new File(folder, name + TMP_SUFFIX), dir = new File(folder, name);
+		if (tmp.exists())
+			FileIO.deleteDirectory(tmp);
+		if (dir.exists())
+			FileIO.deleteDirectory(dir);
+
+		// the whole set, then the folder
+		tmp.mkdirs();
+		for (Entry<String, DenseMatrix> en : snapshot.entrySet())
+			MappedDenseMatrix.write(en.getValue(), new File(tmp, en.getKey() + ".bin").getPath());
+		Files.move(tmp.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		// the manifest
+		Path manifest = new File(folder, MANIFEST).toPath();
+		Path tmpManifest = new File(folder, MANIFEST + TMP_SUFFIX).toPath();
+		Files.write(tmpManifest, name.getBytes(StandardCharsets.UTF_8));
+		Files.move(tmpManifest, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		// older checkpoints, and leftovers of failed ones
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.isDirectory() && f.getName().startsWith(PREFIX) && !f.getName().equals(name))
+					FileIO.deleteDirectory(f);
+			}
+		}
+
+		Logs.debug("A checkpoint is saved to folder \"{}\"", dir);
+	}
+
+	/**
+	 * @return the folder of the latest complete checkpoint if the given folder
+	 *         holds checkpoints, or the given folder otherwise
+	 */
+	public static String resolve(String folder) throws IOException {
+		File manifest = new File(folder, MANIFEST);
+		if (!manifest.exists())
+			return folder;
+
+		String name = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8).trim();
+		return new File(folder, name).getPath();
+	}
+
+	/**
+	 * Wait for the pending checkpoint (if any) to be written
+	 *
+	 * @throws Exception
+	 *             if the checkpoint failed to be written
+	 */
+	public void await() throws Exception {
+		if (pending == null)
+			return;
+
+		try {
+			pending.get();
+		} finally {
+			pending = null;
+		}
+	}
+
+	/**
+	 * Wait for the pending checkpoint and stop the background thread
+	 */
+	public void close() throws Exception {
+		try {
+			await();
+		} finally {
+			writer.shutdown();
+		}
+	}
+}
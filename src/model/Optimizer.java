@@ -0,0 +1,160 @@
+package model;
+
+import matrix.DenseMatrix;
+
+/**
+ * Update rule of a factor matrix, given the gradient of one of its rows.
+ *
+ * The gradient of a row is {@code vec * coef + row * reg}, as in
+ * {@link DenseMatrix#gradientStep(int, double[], int, double, double, double)}.
+ * Plain SGD scales it by the global learning rate; the adaptive optimizers
+ * additionally scale each entry by its own statistics of past gradients, so
+ * that rare words take larger steps than frequent ones. Their updates are
+ * sparse: only the entries of the given row are touched, and the statistics
+ * of other rows are left as they are (lazy updates).
+ *
+ * An optimizer keeps state per entry of one matrix. As the factors, the state
+ * is updated by all training threads without locks, and is rolled back with
+ * them when an iteration is undone.
+ */
+public abstract class Optimizer {
+
+	// small constant to avoid division by zero
+	private static final double EPSILON = 1e-8;
+
+	/**
+	 * @param name
+	 *            sgd, adagrad or adam
+	 * @param Q
+	 *            the matrix to optimize
+	 */
+	public static Optimizer create(String name, DenseMatrix Q) {
+		switch (name.toLowerCase()) {
+		case "sgd":
+			return new SGD();
+		case "adagrad":
+			return new AdaGrad(Q);
+		case "adam":
+			return new Adam(Q);
+		default:
+			throw new IllegalArgumentException("Unknown optimizer: " + name);
+		}
+	}
+
+	/**
+	 * Update a row by its gradient {@code vec[offset...] * coef + row * reg}
+	 */
+	public abstract void update(DenseMatrix Q, int row, double[] vec, int offset, double coef, double reg,
+			double lRate);
+
+	/**
+	 * Keep a copy of the state, taken with the last weights of the recommender
+	 */
+	public void snapshot() {
+	}
+
+	/**
+	 * Roll the state back to the last {@link #snapshot()}, if any, together
+	 * with the weights
+	 */
+	public void restore() {
+	}
+
+	/**
+	 * @return a copy of state in the given buffer, allocated if absent
+	 */
+	protected static double[] copy(double[] state, double[] buffer) {
+		if (buffer == null)
+			return state.clone();
+
+		System.arraycopy(state, 0, buffer, 0, state.length);
+		return buffer;
+	}
+
+	/**
+	 * Plain SGD: {@code row = row - gradient * lRate}
+	 */
+	public static class SGD extends Optimizer {
+
+		@Override
+		public void update(DenseMatrix Q, int row, double[] vec, int offset, double coef, double reg, double lRate) {
+			Q.gradientStep(row, vec, offset, coef, reg, lRate);
+		}
+	}
+
+	/**
+	 * AdaGrad: each entry is updated by {@code lRate / sqrt(G)}, where G is the
+	 * sum of its squared gradients
+	 */
+	public static class AdaGrad extends Optimizer {
+		private final double[] sumSquares;
+		private double[] lastSumSquares;
+
+		public AdaGrad(DenseMatrix Q) {
+			sumSquares = new double[Q.size()];
+		}
+
+		@Override
+		public void update(DenseMatrix Q, int row, double[] vec, int offset, double coef, double reg, double lRate) {
+			Q.adaGradStep(row, vec, offset, coef, reg, lRate, sumSquares, EPSILON);
+		}
+
+		@Override
+		public void snapshot() {
+			lastSumSquares = copy(sumSquares, lastSumSquares);
+		}
+
+		@Override
+		public void restore() {
+			if (lastSumSquares != null)
+				System.arraycopy(lastSumSquares, 0, sumSquares, 0, sumSquares.length);
+		}
+	}
+
+	/**
+	 * Lazy Adam: the moment estimates of an entry are only updated when its
+	 * row is, and the bias correction uses the number of updates of the row
+	 */
+	public static class Adam extends Optimizer {
+		private static final double BETA1 = 0.9, BETA2 = 0.999;
+
+		// first and second moment estimates, and number of updates per row
+		private final double[] m, v;
+		private final int[] steps;
+		private double[] lastM, lastV;
+		private int[] lastSteps;
+
+		public Adam(DenseMatrix Q) {
+			m = new double[Q.size()];
+			v = new double[Q.size()];
+			steps = new int[Q.numRows()];
+		}
+
+		@Override
+		public void update(DenseMatrix Q, int row, double[] vec, int offset, double coef, double reg, double lRate) {
+			int t = ++steps[row];
+			double correction1 = 1 - Math.pow(BETA1, t), correction2 = 1 - Math.pow(BETA2, t);
+
+			Q.adamStep(row, vec, offset, coef, reg, lRate, m, v, BETA1, BETA2, correction1, correction2, EPSILON);
+		}
+
+		@Override
+		public void snapshot() {
+			lastM = copy(m, lastM);
+			lastV = copy(v, lastV);
+			if (lastSteps == null)
+				lastSteps = steps.clone();
+			else
+				System.arraycopy(steps, 0, lastSteps, 0, steps.length);
+		}
+
+		@Override
+		public void restore() {
+			if (lastSteps == null)
+				return;
+			System.arraycopy(lastM, 0, m, 0, m.length);
+			System.arraycopy(lastV, 0, v, 0, v.length);
+			System.arraycopy(lastSteps, 0, steps, 0, steps.length);
+		}
+	}
+}
@@ -2,26 +2,35 @@ package model;
 
 import happy.coding.io.Configer;
 import happy.coding.io.FileIO;
-import happy.coding.io.Lists;
 import happy.coding.io.Logs;
 import happy.coding.io.Strings;
+import happy.coding.math.Randoms;
 import happy.coding.system.Dates;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import matrix.BatchScorer;
 import matrix.DenseMatrix;
+import matrix.FloatDenseMatrix;
+import matrix.MappedDenseMatrix;
 import matrix.SparseMatrix;
 import util.EvalUtil;
+import util.EvalUtil.Mean;
 import util.FileUtil;
 import util.VectorUtil;
 
@@ -65,6 +74,10 @@ public abstract class Recommender {
 	// initial models using normal distribution
 	protected boolean initByNorm = false;
 	protected float initMean, initStd;
+	// whether to store the factor matrices in single precision
+	protected boolean singlePrecision = false;
+	// used to shuffle tuples, seeded by random.seed if given
+	protected Random random = new Random();
 
 	protected float globalMean; // global average of training rates
 
@@ -88,6 +101,35 @@ public abstract class Recommender {
 	protected float decay; // decay of learning rate
 	protected boolean undo = false;
 
+	// number of worker threads used to train the model (lock-free when > 1)
+	protected int numThreads = 1;
+	protected ExecutorService pool;
+	// number of tuples per mini-batch, where 1 is per-tuple SGD
+	protected int batchSize = 1;
+	// update rule of factors: sgd, adagrad or adam
+	protected String optimizer = "sgd";
+	// optimizers of U, T and V, created with the training kernels
+	protected Optimizer optU, optT, optV;
+	// one training kernel per worker thread
+	private BPRKernel[] kernels;
+	// latent factors of the candidate items, rebuilt before each evaluation
+	private DenseMatrix itemFactors;
+	// time spent in SGD passes (excluding evaluation), and number of passes
+	private long sgdNanos = 0;
+	private int sgdPasses = 0;
+	// time spent in evaluation passes, and number of passes
+	private long evalNanos = 0;
+	private int evalPasses = 0;
+	// writes checkpoints of the model in the background during training
+	private Checkpointer checkpointer;
+	// timing and throughput of training iterations, in metrics.csv and JMX
+	protected final TrainingMetrics metrics = new TrainingMetrics();
+	// current training iteration, and its JFR event while recorded
+	private int iteration = 0;
+	private TrainingEvents.Epoch epoch;
+	// number of rows per block when computing the norms of factor matrices
+	private static final int NORM_BLOCK_SIZE = 4096;
+
 	/*********************** Model learning parameters *************/
 
 	protected DenseMatrix U, last_U; // user-factor matrix
@@ -112,7 +154,7 @@ public abstract class Recommender {
 	protected static double smallLRate = 1.0e-5;
 
 	public enum Measure {
-		Pre1, Pre3, Pre5, Pre10, Pre20, MAP, TrainTime, TestTime
+		Pre1, Pre3, Pre5, Pre10, Pre20, MAP, TrainTime, TestTime, IterTime, EvalTime, NumIters
 	}
 
 
@@ -152,6 +194,15 @@ public abstract class Recommender {
 		}
 
 		numIters = cf.getInt("num.max.iter");
+		if (cf.containsKey("num.threads")) {
+			numThreads = Math.max(1, cf.getInt("num.threads"));
+		}
+		if (cf.containsKey("batch.size")) {
+			batchSize = Math.max(1, cf.getInt("batch.size"));
+		}
+		if (cf.containsKey("optimizer")) {
+			optimizer = cf.getString("optimizer");
+		}
 
 		verbose = cf.isOn("is.verbose");
 		itersResults = cf.getInt("iters.result.out");
@@ -161,6 +212,15 @@ public abstract class Recommender {
 		initByNorm = cf.isOn("init.latent.norm");
 		initMean = cf.getFloat("init.latent.mean");
 		initStd = cf.getFloat("init.latent.std");
+		if (cf.containsKey("is.single.precision")) {
+			singlePrecision = cf.isOn("is.single.precision");
+		}
+
+		if (cf.containsKey("random.seed")) {
+			long seed = Long.parseLong(cf.getString("random.seed").trim());
+			random = new Random(seed);
+			Randoms.seed(seed);
+		}
 	}
 
 	public Recommender(DataDAO trainDao, DataDAO testDao) {
@@ -188,19 +248,37 @@ public abstract class Recommender {
 	public void execute() throws Exception {
 		Stopwatch sw = Stopwatch.createStarted();
 		initFolders();
+		metrics.register(algoName);
 
-		// train
-		if (mode.equals("train")) {
-			initModel();
-			buildModel();
-		} else { // test
-			loadModel(cf.getString("load.model.path"));
+		if (numThreads > 1) {
+			pool = Executors.newFixedThreadPool(numThreads);
 		}
-		long trainTime = sw.elapsed(TimeUnit.MILLISECONDS);
 
-		// test
-		measures = evalRankings(true, numIters);
-		sw.stop();
+		long trainTime;
+		try {
+			// train
+			if (mode.equals("train")) {
+				initModel();
+				buildModel();
+			} else { // test
+				loadModel(cf.getString("load.model.path"));
+			}
+			trainTime = sw.elapsed(TimeUnit.MILLISECONDS);
+
+			// test
+			measures = evalRankings(true, numIters);
+			sw.stop();
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+				pool = null;
+			}
+			if (checkpointer != null) {
+				checkpointer.close();
+				checkpointer = null;
+			}
+			metrics.close();
+		}
 
 		// result
 		long testTime = sw.elapsed(TimeUnit.MILLISECONDS) - trainTime;
@@ -241,6 +319,8 @@ public abstract class Recommender {
 			String evalInfo = "Iter,Pre1,Pre3,Pre5,Pre10,Pre20,MAP";
 			resultPW.println(evalInfo);
 
+			metrics.open(resultFolder + File.separator + "metrics.csv");
+
 			FileIO.makeDirectory(resultFolder + File.separator + "prediction");
 
 			// copy config file
@@ -256,6 +336,9 @@ public abstract class Recommender {
 
 		measures.put(Measure.TrainTime, (double) trainTime);
 		measures.put(Measure.TestTime, (double) testTime);
+		measures.put(Measure.IterTime, sgdPasses == 0 ? 0 : sgdNanos / 1e6 / sgdPasses);
+		measures.put(Measure.EvalTime, evalPasses == 0 ? 0 : evalNanos / 1e6 / evalPasses);
+		measures.put(Measure.NumIters, (double) sgdPasses);
 
 		String evalInfo = result + "\nTime: " + Dates.parse(measures.get(Measure.TrainTime).longValue()) + ", "
 				+ Dates.parse(measures.get(Measure.TestTime).longValue());
@@ -289,6 +372,16 @@ public abstract class Recommender {
 
 	}
 
+	/**
+	 * @return a factor matrix in double or single precision, as configured
+	 */
+	protected DenseMatrix newFactors(int numRows, int numColumns) {
+		if (singlePrecision)
+			return new FloatDenseMatrix(numRows, numColumns);
+		else
+			return new DenseMatrix(numRows, numColumns);
+	}
+
 	/**
 	 * @return the evaluation results of ranking predictions
 	 */
@@ -296,7 +389,7 @@ public abstract class Recommender {
 
 		if (iter != 0) {
 			if (iter % itersModel == 0 && !lastIter) {
-				saveModel();
+				checkpoint(iter);
 			}
 
 			if (iter % itersPrediction == 0 || lastIter) {
@@ -316,93 +409,297 @@ public abstract class Recommender {
 			userPW.println(evalInfo);
 		}
 
+		long begin = System.nanoTime();
+		TrainingEvents.Evaluation event = new TrainingEvents.Evaluation();
+		event.begin();
+
 		// # of users
 		int capacity = testMatrix.numRows();
 
-		// initialization capacity to speed up
-		List<Double> precs1 = new ArrayList<>(capacity);
-		List<Double> precs3 = new ArrayList<>(capacity);
-		List<Double> precs5 = new ArrayList<>(capacity);
-		List<Double> precs10 = new ArrayList<>(capacity);
-		List<Double> precs20 = new ArrayList<>(capacity);
-		List<Double> aps = new ArrayList<>(capacity);
+		// running means of users' precisions and APs
+		Mean precs1 = new Mean(), precs3 = new Mean(), precs5 = new Mean(), precs10 = new Mean(),
+				precs20 = new Mean(), aps = new Mean();
 
 		if (verbose && lastIter) {
 			logPW.println("\n------Testing------");
 			logPW.println(String.format("%s has candidate items: %d", algoName, testMatrix.columns().size()));
 		}
 
-		// for each test user
-		int um = capacity;
-		for (int u = 0; u < um; u++) {
-			List<Integer> testItems = testMatrix.getColumns(u);
-			Collections.shuffle(testItems);
-			List<Integer> posItems = testMatrix.getPositiveColumns(u);
-			HashSet<Integer> posSet = new HashSet<Integer>(posItems);
-
-			// predict the ranking scores (unordered) of all candidate items
-			List<Map.Entry<Integer, Double>> itemScores = new ArrayList<>(Lists.initSize(testItems));
-			for (final Integer j : testItems) {
-				final double rank = ranking(u, j, testDao);
-				if (!Double.isNaN(rank)) {
-					itemScores.add(new SimpleImmutableEntry<Integer, Double>(j, rank));
-				}
-			}
-
-			// order the ranking scores from highest to lowest
-			Lists.sortList(itemScores, true);
-			if (iter != 0 && (iter % itersPrediction == 0 || lastIter))
-				printPrediction(u, itemScores);
-
-			List<Integer> rankedItems = new ArrayList<>();
-			for (Map.Entry<Integer, Double> kv : itemScores)
-				rankedItems.add(kv.getKey());
+		// rank the candidate items of each test user, in parallel if possible
+		boolean printPred = iter != 0 && (iter % itersPrediction == 0 || lastIter);
+		UserEval[] evals;
+		try {
+			cacheItemFactors();
+			evals = evalUsers(capacity, printPred, random.nextLong());
+		} finally {
+			// the model changes after each iteration
+			itemFactors = null;
+		}
 
-			Double AP = EvalUtil.AP(posSet, rankedItems);
-			Map<Integer, Double> precs = EvalUtil.precisionAll(posSet, rankedItems);
+		// combine in the order of users, so that the results and the output
+		// files do not depend on the number of threads
+		for (int u = 0; u < capacity; u++) {
+			UserEval eval = evals[u];
+			if (printPred) {
+				predictPW.println(eval.prediction);
+				predictPW.flush();
+			}
 
+			double[] precs = eval.precs;
 			if (precs != null) {
-				precs1.add(precs.get(1));
-				precs3.add(precs.get(3));
-				precs5.add(precs.get(5));
-				precs10.add(precs.get(10));
-				precs20.add(precs.get(20));
+				precs1.add(precision(precs, 1));
+				precs3.add(precision(precs, 3));
+				precs5.add(precision(precs, 5));
+				precs10.add(precision(precs, 10));
+				precs20.add(precision(precs, 20));
 
 				if (lastIter) {
-					userPW.print(this.trainDao.getUserId(u) + "," + precs.get(1) + "," + precs.get(3) + ","
-							+ precs.get(5) + "," + precs.get(10) + "," + precs.get(20));
+					userPW.print(this.trainDao.getUserId(u) + "," + toString(precision(precs, 1)) + ","
+							+ toString(precision(precs, 3)) + "," + toString(precision(precs, 5)) + ","
+							+ toString(precision(precs, 10)) + "," + toString(precision(precs, 20)));
 				}
 			}
-			aps.add(AP);
+			aps.add(eval.AP);
 
 			if (lastIter) {
-				userPW.println("," + AP);
+				userPW.println("," + toString(eval.AP));
 			}
-
 		}
 
 		Map<Measure, Double> measures = new HashMap<>();
-		prec = EvalUtil.mean(precs1);
-		map = EvalUtil.mean(aps);
+		prec = precs1.get();
+		map = aps.get();
 		measures.put(Measure.Pre1, prec);
-		measures.put(Measure.Pre3, EvalUtil.mean(precs3));
-		measures.put(Measure.Pre5, EvalUtil.mean(precs5));
-		measures.put(Measure.Pre10, EvalUtil.mean(precs10));
-		measures.put(Measure.Pre20, EvalUtil.mean(precs20));
+		measures.put(Measure.Pre3, precs3.get());
+		measures.put(Measure.Pre5, precs5.get());
+		measures.put(Measure.Pre10, precs10.get());
+		measures.put(Measure.Pre20, precs20.get());
 		measures.put(Measure.MAP, map);
 
+		long elapsed = System.nanoTime() - begin;
+		evalNanos += elapsed;
+		evalPasses++;
+		metrics.addEval(elapsed);
+
+		if (event.shouldCommit()) {
+			event.iteration = iter;
+			event.users = capacity;
+			event.last = lastIter;
+			event.commit();
+		}
+
 		return measures;
 	}
 
-	private void printPrediction(int u, List<Map.Entry<Integer, Double>> scores) {
-		predictPW.print(u);
-		for (Map.Entry<Integer, Double> entry : scores) {
-			int item = entry.getKey();
-			double score = entry.getValue();
-			predictPW.print(" " + item + ":" + score);
+	/**
+	 * compute the latent factors of all candidate items once, so that ranking
+	 * an item for a user takes a single inner product instead of averaging its
+	 * word factors again
+	 */
+	private void cacheItemFactors() throws Exception {
+		if (T == null && V == null)
+			return;
+
+		final List<Integer> items = testMatrix.columns();
+		final DenseMatrix factors = new DenseMatrix(testMatrix.numColumns(), numSharedFactors);
+		final double[] data = factors.getFlatData();
+
+		if (pool == null) {
+			BPRKernel kernel = newKernel();
+			for (int j : items)
+				kernel.itemFactor(testDao.features, j, data, j * numSharedFactors);
+		} else {
+			List<Future<Void>> futures = new ArrayList<>(numThreads);
+			for (int t = 0; t < numThreads; t++) {
+				final int first = t;
+				futures.add(pool.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						BPRKernel kernel = newKernel();
+						for (int i = first; i < items.size(); i += numThreads) {
+							int j = items.get(i);
+							kernel.itemFactor(testDao.features, j, data, j * numSharedFactors);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures)
+				f.get();
+		}
+
+		itemFactors = factors;
+	}
+
+	/**
+	 * the evaluation results of a test user
+	 */
+	private static class UserEval {
+		// precisions at 1, 2, ..., or null if there is no positive item
+		double[] precs;
+		// NaN if there is no positive item
+		double AP;
+		// the ranked predictions, if requested
+		String prediction;
+	}
+
+	// number of test users whose candidates are scored together
+	private static final int USER_BLOCK_SIZE = 64;
+
+	/**
+	 * evaluate all test users, either serially or by the threads of the pool.
+	 * Candidate items of user u are shuffled by a random generator seeded with
+	 * {@code seed + u}, so that results do not depend on the scheduling.
+	 */
+	private UserEval[] evalUsers(final int numTestUsers, final boolean printPred, final long seed) throws Exception {
+		final UserEval[] evals = new UserEval[numTestUsers];
+		final int numBlocks = (numTestUsers + USER_BLOCK_SIZE - 1) / USER_BLOCK_SIZE;
+
+		if (pool == null) {
+			BatchScorer scorer = newScorer();
+			EvalBuffers buf = new EvalBuffers();
+			for (int b = 0; b < numBlocks; b++)
+				evalBlock(b, numTestUsers, scorer, buf, printPred, seed, evals);
+			return evals;
+		}
+
+		// blocks of users are interleaved among threads to balance their
+		// workloads
+		List<Future<Void>> futures = new ArrayList<>(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int first = t;
+			futures.add(pool.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					BatchScorer scorer = newScorer();
+					EvalBuffers buf = new EvalBuffers();
+					for (int b = first; b < numBlocks; b += numThreads)
+						evalBlock(b, numTestUsers, scorer, buf, printPred, seed, evals);
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> f : futures)
+			f.get();
+
+		return evals;
+	}
+
+	/**
+	 * @return a scorer of candidate items by cached item factors, or null if
+	 *         items are not cached
+	 */
+	private BatchScorer newScorer() {
+		return itemFactors == null ? null : new BatchScorer(U, itemFactors, testMatrix);
+	}
+
+	/**
+	 * buffers of a thread evaluating users, reused across its users
+	 */
+	private static class EvalBuffers {
+		int[] items = new int[0];
+		double[] scores = new double[0];
+		final BitSet positive = new BitSet();
+		final EvalUtil.Scratch scratch = new EvalUtil.Scratch();
+
+		void reset(int size) {
+			if (items.length < size) {
+				items = new int[size];
+				scores = new double[size];
+			}
+			positive.clear();
 		}
-		predictPW.println();
-		predictPW.flush();
+	}
+
+	private void evalBlock(int block, int numTestUsers, BatchScorer scorer, EvalBuffers buf, boolean printPred,
+			long seed, UserEval[] evals) throws Exception {
+		int from = block * USER_BLOCK_SIZE;
+		int to = Math.min(numTestUsers, from + USER_BLOCK_SIZE);
+
+		if (scorer != null)
+			scorer.score(from, to);
+		for (int u = from; u < to; u++)
+			evals[u] = evalUser(u, scorer, buf, printPred, new Random(seed + u));
+	}
+
+	/**
+	 * rank the candidate items of a test user. It is called concurrently by
+	 * multiple threads, and thus must only read the model.
+	 */
+	private UserEval evalUser(int u, BatchScorer scorer, EvalBuffers buf, boolean printPred, Random rand)
+			throws Exception {
+		List<Integer> testItems = testMatrix.getColumns(u);
+		Collections.shuffle(testItems, rand);
+
+		// predict the ranking scores (unordered) of all candidate items
+		buf.reset(testItems.size());
+		int[] items = buf.items;
+		double[] scores = buf.scores;
+		BitSet positive = buf.positive;
+		int n = 0, numPos = 0;
+		for (int j : testItems) {
+			boolean pos = testMatrix.get(u, j) > 0;
+			if (pos)
+				numPos++;
+
+			double rank = scorer != null ? scorer.get(u, j) : ranking(u, j, testDao);
+			if (!Double.isNaN(rank)) {
+				items[n] = j;
+				scores[n] = rank;
+				if (pos)
+					positive.set(n);
+				n++;
+			}
+		}
+
+		UserEval eval = new UserEval();
+		if (numPos == 0 && !printPred) {
+			eval.AP = Double.NaN;
+			return eval;
+		}
+
+		// order the top ranking scores from highest to lowest, or all of them
+		// if predictions are printed
+		int k = Math.min(n, printPred ? n : EvalUtil.topK);
+		int[] ranked = EvalUtil.rankTop(scores, n, k, buf.scratch);
+
+		if (printPred)
+			eval.AP = EvalUtil.AP(ranked, n, positive, numPos);
+		else
+			eval.AP = EvalUtil.AP(scores, positive, n, numPos, buf.scratch);
+
+		if (numPos > 0) {
+			eval.precs = new double[Math.min(n, EvalUtil.topK)];
+			EvalUtil.precisionAll(ranked, n, positive, eval.precs);
+		}
+		if (printPred)
+			eval.prediction = toPrediction(u, items, scores, ranked, k);
+
+		return eval;
+	}
+
+	private String toPrediction(int u, int[] items, double[] scores, int[] ranked, int k) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(u);
+		for (int r = 0; r < k; r++)
+			sb.append(' ').append(items[ranked[r]]).append(':').append(scores[ranked[r]]);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the precision at k, or NaN if fewer than k items are ranked
+	 */
+	private static double precision(double[] precs, int k) {
+		return k <= precs.length ? precs[k - 1] : Double.NaN;
+	}
+
+	/**
+	 * @return a measure of a user, where a missing one (NaN) is "null"
+	 */
+	private static String toString(double val) {
+		return Double.isNaN(val) ? "null" : String.valueOf(val);
 	}
 
 	/**
@@ -421,10 +718,188 @@ public abstract class Recommender {
 	}
 
 	protected double ranking(int u, int j, DataDAO dateDao) throws Exception {
+		if (itemFactors != null && dateDao == testDao)
+			return DenseMatrix.rowMult(U, u, itemFactors, j);
+
 		return predict(u, j, dateDao);
 	}
 
+	/**
+	 * @return a new training kernel for one worker thread
+	 */
+	protected BPRKernel newKernel() {
+		return new BPRKernel(this, true);
+	}
+
+	/**
+	 * Run one pass of SGD over the (shuffled) rating tuples. With more than
+	 * one thread, the tuples are split into one contiguous range per thread,
+	 * and the workers update the factors without any locking (Hogwild). Updates
+	 * of different tuples seldom touch the same rows as tweet vocabularies are
+	 * sparse, so the occasional lost update is tolerated.
+	 * 
+	 * @return the training errors of all tuples
+	 */
+	protected double updateTuples() throws Exception {
+		long begin = System.nanoTime();
+		TrainingEvents.SgdPass event = new TrainingEvents.SgdPass();
+		event.begin();
+		try {
+			return runKernels();
+		} finally {
+			if (event.shouldCommit()) {
+				event.iteration = iteration;
+				event.tuples = tupleSize;
+				event.threads = numThreads;
+				event.commit();
+			}
+
+			long elapsed = System.nanoTime() - begin;
+			sgdNanos += elapsed;
+			sgdPasses++;
+			metrics.addSgd(elapsed, tupleSize);
+		}
+	}
+
+	private double runKernels() throws Exception {
+		if (kernels == null) {
+			optU = Optimizer.create(optimizer, U);
+			if (T != null)
+				optT = Optimizer.create(optimizer, T);
+			if (V != null)
+				optV = Optimizer.create(optimizer, V);
+
+			kernels = new BPRKernel[numThreads];
+			for (int t = 0; t < numThreads; t++)
+				kernels[t] = newKernel();
+		}
+
+		if (pool == null)
+			return runKernel(kernels[0], 0, tupleSize);
+
+		List<Future<Double>> futures = new ArrayList<>(numThreads);
+		int chunk = (tupleSize + numThreads - 1) / numThreads;
+		for (int t = 0; t < numThreads; t++) {
+			final BPRKernel kernel = kernels[t];
+			final int from = Math.min(tupleSize, t * chunk);
+			final int to = Math.min(tupleSize, from + chunk);
+			futures.add(pool.submit(new Callable<Double>() {
+
+				@Override
+				public Double call() throws Exception {
+					return runKernel(kernel, from, to);
+				}
+			}));
+		}
+
+		// sum up in the order of ranges so that errs do not depend on
+		// scheduling
+		double sum = 0;
+		for (Future<Double> f : futures)
+			sum += f.get();
+		return sum;
+	}
+
+	/**
+	 * update the model by tuples [from, to) one by one, or by mini-batches
+	 * 
+	 * @return the training error of the tuples
+	 */
+	private double runKernel(BPRKernel kernel, int from, int to) {
+		double sum = 0;
+		if (batchSize <= 1) {
+			for (int i = from; i < to; i++)
+				sum += kernel.update(ratingTuples.get(i));
+		} else {
+			for (int i = from; i < to; i += batchSize)
+				sum += kernel.update(ratingTuples, i, Math.min(to, i + batchSize));
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the regularization loss {@code regU * |U|^2 + regT * |T|^2 +
+	 *         regV * |V|^2} of the given (non-null) factor matrices.
+	 * 
+	 *         Rows of all matrices are summed up in blocks, which are split
+	 *         across the worker threads in one pass; block sums are added in
+	 *         order, so that the loss does not depend on the number of threads.
+	 */
+	protected double regLoss() throws Exception {
+		final DenseMatrix[] factors = { U, T, V };
+		float[] regs = { regU, regT, regV };
+
+		// blocks of rows: {matrix, fromRow, toRow}
+		final List<int[]> blocks = new ArrayList<>();
+		for (int m = 0; m < factors.length; m++) {
+			if (factors[m] == null)
+				continue;
+
+			int numRows = factors[m].numRows();
+			for (int from = 0; from < numRows; from += NORM_BLOCK_SIZE)
+				blocks.add(new int[] { m, from, Math.min(numRows, from + NORM_BLOCK_SIZE) });
+		}
+
+		final double[] sums = new double[blocks.size()];
+		if (pool == null) {
+			for (int b = 0; b < sums.length; b++)
+				sums[b] = normSquare(factors, blocks.get(b));
+		} else {
+			List<Future<Void>> futures = new ArrayList<>(numThreads);
+			for (int t = 0; t < numThreads; t++) {
+				final int first = t;
+				futures.add(pool.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						for (int b = first; b < sums.length; b += numThreads)
+							sums[b] = normSquare(factors, blocks.get(b));
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures)
+				f.get();
+		}
+
+		double[] norms = new double[factors.length];
+		for (int b = 0; b < sums.length; b++)
+			norms[blocks.get(b)[0]] += sums[b];
+
+		double loss = 0;
+		for (int m = 0; m < factors.length; m++) {
+			if (factors[m] != null)
+				loss += regs[m] * norms[m];
+		}
+		return loss;
+	}
+
+	private static double normSquare(DenseMatrix[] factors, int[] block) {
+		return factors[block[0]].normSquare(block[1], block[2]);
+	}
+
+	/**
+	 * mark the start of a training iteration, which is completed by
+	 * {@link #isConverged(int)}
+	 */
+	protected void startIteration(int iter) {
+		iteration = iter;
+		start = System.currentTimeMillis();
+		metrics.startIteration();
+
+		// only kept across the iteration if JFR records it
+		TrainingEvents.Epoch event = new TrainingEvents.Epoch();
+		if (event.isEnabled()) {
+			event.begin();
+			epoch = event;
+		} else
+			epoch = null;
+	}
+
 	protected boolean isConverged(int iter) {
+		// the learning rate used by this iteration, before it is updated
+		float iterLRate = lRate;
+
 		if (iter % itersResults == 0) {
 			try {
 				measures = evalRankings(false, iter);
@@ -477,6 +952,21 @@ public abstract class Recommender {
 			last_map = map;
 		}
 
+		metrics.endIteration(iter, iterLRate, errs, loss, map);
+		if (epoch != null) {
+			if (epoch.shouldCommit()) {
+				epoch.iteration = iter;
+				epoch.tuples = tupleSize;
+				epoch.learningRate = iterLRate;
+				epoch.loss = loss;
+				epoch.converged = converged;
+				epoch.commit();
+			}
+			epoch = null;
+		}
+		if (verbose)
+			logPW.println(metrics);
+
 		logPW.flush();
 		return converged;
 	}
@@ -528,15 +1018,38 @@ public abstract class Recommender {
 	}
 
 	/**
-	 * updates last weights
+	 * updates last weights, which are copied into the buffers of last weights
+	 * allocated by the first update, along with the state of the optimizers
 	 */
 	protected void updates() {
-		if (U != null)
-			last_U = U.clone();
-		if (T != null)
-			last_T = T.clone();
-		if (V != null)
-			last_V = V.clone();
+		TrainingEvents.Snapshot event = new TrainingEvents.Snapshot();
+		event.begin();
+
+		last_U = snapshot(U, last_U);
+		last_T = snapshot(T, last_T);
+		last_V = snapshot(V, last_V);
+		// the state of adaptive optimizers goes with the weights it was built on
+		for (Optimizer opt : new Optimizer[] { optU, optT, optV })
+			if (opt != null)
+				opt.snapshot();
+
+		if (event.shouldCommit()) {
+			event.iteration = iteration;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return a copy of weights in the given buffer, allocated if absent
+	 */
+	private static DenseMatrix snapshot(DenseMatrix weights, DenseMatrix buffer) {
+		if (weights == null)
+			return buffer;
+		if (buffer == null)
+			return weights.clone();
+
+		buffer.copyFrom(weights);
+		return buffer;
 	}
 
 	/**
@@ -546,15 +1059,55 @@ public abstract class Recommender {
 		logPW.println(String.format("!%d: undo last weight changes and sharply decrease the learning rate ! %s", iter,
 				isBoldDriver));
 
+		TrainingEvents.Undo event = new TrainingEvents.Undo();
+		event.begin();
+
+		// copied in place, so that last weights are kept for another undo
 		if (last_U != null)
-			U = last_U.clone();
+			U.copyFrom(last_U);
 		if (last_T != null)
-			T = last_T.clone();
+			T.copyFrom(last_T);
 		if (last_V != null)
-			V = last_V.clone();
+			V.copyFrom(last_V);
+		for (Optimizer opt : new Optimizer[] { optU, optT, optV })
+			if (opt != null)
+				opt.restore();
+
+		if (event.shouldCommit()) {
+			event.iteration = iter;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Save a checkpoint of the factor matrices as binary model files into
+	 * folder model/checkpoint/iter_n/, which is written in the background while
+	 * training goes on
+	 */
+	protected void checkpoint(int iter) throws Exception {
+		long begin = System.nanoTime();
+		TrainingEvents.Checkpoint event = new TrainingEvents.Checkpoint();
+		event.begin();
+		if (checkpointer == null)
+			checkpointer = new Checkpointer();
+
+		Map<String, DenseMatrix> factors = new LinkedHashMap<>();
+		factors.put("userFactors", U);
+		factors.put("textFactors", T);
+		factors.put("visualFactors", V);
+		checkpointer.save(resultFolder + File.separator + "model" + File.separator + "checkpoint", iter, factors);
+		metrics.addCheckpoint(System.nanoTime() - begin);
+
+		if (event.shouldCommit()) {
+			event.iteration = iter;
+			event.commit();
+		}
 	}
 
 	protected String saveModel() throws Exception {
+		TrainingEvents.SaveModel event = new TrainingEvents.SaveModel();
+		event.begin();
+
 		// make a folder
 		modelFolder = resultFolder + File.separator + "model/";
 		FileIO.makeDirectory(modelFolder);
@@ -562,56 +1115,72 @@ public abstract class Recommender {
 		if (!FileIO.exist(modelFolder + "config"))
 			FileIO.copyFile(configPath, modelFolder + "config");
 
-		// save the rating matrix and dao as binary to save space
-		String suffix = ".bin";
-		if (cf.isOn("save.model.bin")) {
-			suffix = ".bin";
-			FileIO.serialize(U, modelFolder + "userFactors" + suffix);
-			FileIO.serialize(T, modelFolder + "textFactors" + suffix);
-			if (V != null)
-				FileIO.serialize(V, modelFolder + "visualFactors" + suffix);
-		} else {
-			suffix = ".txt";
-			if (U != null)
-				VectorUtil.saveMatrix(U, modelFolder + "userFactors" + suffix);
-			if (T != null)
-				VectorUtil.saveMatrix(T, modelFolder + "textFactors" + suffix);
-			if (V != null)
-				VectorUtil.saveMatrix(V, modelFolder + "visualFactors" + suffix);
-		}
+		// save the factor matrices as binary model files to save space and
+		// load them by memory mapping, or as text files
+		boolean bin = cf.isOn("save.model.bin");
+		String suffix = bin ? ".bin" : ".txt";
+		if (U != null)
+			saveFactors(U, modelFolder + "userFactors" + suffix, bin);
+		if (T != null)
+			saveFactors(T, modelFolder + "textFactors" + suffix, bin);
+		if (V != null)
+			saveFactors(V, modelFolder + "visualFactors" + suffix, bin);
 
-		suffix = ".txt";
 		// save name-id maps
-		VectorUtil.saveMap(trainDao.getIdUsers(), modelFolder + "idUsers" + suffix);
-		VectorUtil.saveMap(trainDao.getIdItems(), modelFolder + "train_idItems" + suffix);
-		VectorUtil.saveMap(testDao.getIdItems(), modelFolder + "test_idItems" + suffix);
+		VectorUtil.saveMap(trainDao.getIdUsers(), modelFolder + "idUsers.txt");
+		VectorUtil.saveMap(trainDao.getIdItems(), modelFolder + "train_idItems.txt");
+		VectorUtil.saveMap(testDao.getIdItems(), modelFolder + "test_idItems.txt");
 		Logs.debug("Learned models are saved to folder \"{}\"", modelFolder);
 
+		if (event.shouldCommit()) {
+			event.folder = modelFolder;
+			event.binary = bin;
+			event.commit();
+		}
+
 		return modelFolder;
 	}
 
 	protected void loadModel(String dirPath) throws Exception {
+		// the latest complete checkpoint, if given a folder of checkpoints
+		dirPath = Checkpointer.resolve(dirPath);
 		logPW.println(String.format("A recommender model is loaded from %s", dirPath));
 		dirPath += File.separator;
 
-		String suffix = ".txt";
-		U = VectorUtil.loadMatix(dirPath + "userFactors" + suffix);
-		T = VectorUtil.loadMatix(dirPath + "textFactors" + suffix);
+		// binary model files are mapped as read-only matrices
+		boolean bin = cf.containsKey("load.model.bin") && cf.isOn("load.model.bin");
+		String suffix = bin ? ".bin" : ".txt";
+		U = loadFactors(dirPath + "userFactors" + suffix, bin);
+		if (FileIO.exist(dirPath + "textFactors" + suffix))
+			T = loadFactors(dirPath + "textFactors" + suffix, bin);
 		if (FileIO.exist(dirPath + "visualFactors" + suffix))
-			V = VectorUtil.loadMatix(dirPath + "visualFactors" + suffix);
+			V = loadFactors(dirPath + "visualFactors" + suffix, bin);
 
 		// load vectors
 		suffix = ".txt";
 
 	}
 
+	private static void saveFactors(DenseMatrix factors, String path, boolean bin) throws Exception {
+		if (bin)
+			MappedDenseMatrix.write(factors, path);
+		else
+			VectorUtil.saveMatrix(factors, path);
+	}
+
+	private DenseMatrix loadFactors(String path, boolean bin) throws Exception {
+		return bin ? MappedDenseMatrix.map(path) : VectorUtil.loadMatix(path);
+	}
+
 	@Override
 	public String toString() {
 		return Strings
 				.toString(new Object[] { "initLRate", "maxLRate", "regU", "regT", "regV", "numSharedFactors",
-						"numIters", "isBoldDriver", "isUndoEnabled", "initByNorm" }, ",")
+						"numIters", "isBoldDriver", "isUndoEnabled", "initByNorm", "numThreads", "batchSize",
+						"optimizer", "singlePrecision" }, ",")
 				+ "\n" + Strings.toString(new Object[] { initLRate, maxLRate, regU, regT, regV, numSharedFactors,
-						numIters, isBoldDriver, isUndoEnabled, initByNorm }, ",");
+						numIters, isBoldDriver, isUndoEnabled, initByNorm, numThreads, batchSize,
+						optimizer, singlePrecision }, ",");
 	}
 
 	protected void buildModel() throws Exception {
@@ -0,0 +1,110 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the phases of training, so that a recording
+ * (e.g., {@code -XX:StartFlightRecording=filename=famf.jfr}) can be sliced by
+ * epoch, SGD pass, evaluation, snapshot, undo, checkpoint and model saving.
+ *
+ * Events are created and begun around each phase, and their fields are only
+ * filled and committed if {@link Event#shouldCommit()}, i.e., JFR is on and
+ * the phase exceeds the configured threshold. When JFR is off, an event is an
+ * unused object which the JIT compiler can elide.
+ */
+public class TrainingEvents {
+
+	@Name("famf.Epoch")
+	@Label("Epoch")
+	@Category("FAMF")
+	@Description("A training iteration, from the SGD pass to the update of the learning rate")
+	public static class Epoch extends Event {
+		@Label("Iteration")
+		public int iteration;
+
+		@Label("Tuples")
+		public int tuples;
+
+		@Label("Learning Rate")
+		public double learningRate;
+
+		@Label("Loss")
+		public double loss;
+
+		@Label("Converged")
+		public boolean converged;
+	}
+
+	@Name("famf.SgdPass")
+	@Label("SGD Pass")
+	@Category("FAMF")
+	@Description("One pass of SGD over the training tuples")
+	public static class SgdPass extends Event {
+		@Label("Iteration")
+		public int iteration;
+
+		@Label("Tuples")
+		public int tuples;
+
+		@Label("Threads")
+		public int threads;
+	}
+
+	@Name("famf.Evaluation")
+	@Label("Evaluation")
+	@Category("FAMF")
+	@Description("Ranking of the candidate items of all test users")
+	public static class Evaluation extends Event {
+		@Label("Iteration")
+		public int iteration;
+
+		@Label("Users")
+		public int users;
+
+		@Label("Final")
+		public boolean last;
+	}
+
+	@Name("famf.Snapshot")
+	@Label("Snapshot")
+	@Category("FAMF")
+	@Description("Copy of the factors kept to undo the next iteration")
+	public static class Snapshot extends Event {
+		@Label("Iteration")
+		public int iteration;
+	}
+
+	@Name("famf.Undo")
+	@Label("Undo")
+	@Category("FAMF")
+	@Description("Rollback of the factors to the last snapshot")
+	public static class Undo extends Event {
+		@Label("Iteration")
+		public int iteration;
+	}
+
+	@Name("famf.Checkpoint")
+	@Label("Checkpoint")
+	@Category("FAMF")
+	@Description("Snapshot of the factors handed to the background checkpointer")
+	public static class Checkpoint extends Event {
+		@Label("Iteration")
+		public int iteration;
+	}
+
+	@Name("famf.SaveModel")
+	@Label("Save Model")
+	@Category("FAMF")
+	@Description("Saving of the learned model")
+	public static class SaveModel extends Event {
+		@Label("Folder")
+		public String folder;
+
+		@Label("Binary")
+		public boolean binary;
+	}
+}
@@ -0,0 +1,234 @@
+package model;
+
+import happy.coding.io.Logs;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import util.FileUtil;
+
+/**
+ * Timing and throughput of each training iteration: wall time, time of the SGD
+ * pass and its tuples per second, evaluation time, time spent in
+ * checkpointing (the snapshot taken by the training thread, not the
+ * background write), GC time, learning rate, and loss.
+ *
+ * The recommender reports the phases of an iteration as they complete; at the
+ * end of an iteration, its metrics are appended to metrics.csv, and published
+ * through JMX as the MBean "famf:type=TrainingMetrics,name=algoName" along
+ * with the totals since training started. Phases outside of iterations, e.g.,
+ * the initial and final evaluations, only count in the totals.
+ */
+public class TrainingMetrics implements TrainingMetricsMBean {
+
+	private static final String HEADER = "Iter,WallMs,SgdMs,TuplesPerSec,EvalMs,CheckpointMs,GcMs,LRate,Errs,Loss,MAP";
+
+	private PrintWriter pw;
+	private ObjectName name;
+
+	// start of the current iteration, and its time in each phase so far
+	private long begin, gcBegin;
+	private long sgdNanos, evalNanos, checkpointNanos;
+	private int tuples;
+
+	// metrics of the last completed iteration, read by JMX
+	private volatile int iteration;
+	private volatile double iterationMillis, sgdMillis, tuplesPerSecond, evalMillis, checkpointMillis, gcMillis;
+	private volatile double learningRate, loss, MAP;
+
+	// totals since training started
+	private volatile long totalTuples;
+	private volatile long totalSgdNanos, totalEvalNanos, totalCheckpointNanos;
+	private final long gcStart = collectionTime();
+
+	/**
+	 * Write the metrics of iterations into a CSV file
+	 */
+	public void open(String path) throws IOException {
+		pw = FileUtil.createWriter(path);
+		pw.println(HEADER);
+		pw.flush();
+	}
+
+	/**
+	 * Publish the metrics through JMX, replacing those of a previous model of
+	 * the same name
+	 */
+	public void register(String algoName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName("famf:type=TrainingMetrics,name=" + ObjectName.quote(algoName));
+			if (server.isRegistered(on))
+				server.unregisterMBean(on);
+			server.registerMBean(this, on);
+			name = on;
+		} catch (JMException e) {
+			Logs.warn("Cannot register training metrics: {}", e.getMessage());
+		}
+	}
+
+	public void startIteration() {
+		begin = System.nanoTime();
+		gcBegin = collectionTime();
+		sgdNanos = evalNanos = checkpointNanos = 0;
+		tuples = 0;
+	}
+
+	public void addSgd(long nanos, int numTuples) {
+		sgdNanos += nanos;
+		tuples += numTuples;
+		totalSgdNanos += nanos;
+		totalTuples += numTuples;
+	}
+
+	public void addEval(long nanos) {
+		evalNanos += nanos;
+		totalEvalNanos += nanos;
+	}
+
+	public void addCheckpoint(long nanos) {
+		checkpointNanos += nanos;
+		totalCheckpointNanos += nanos;
+	}
+
+	/**
+	 * Complete an iteration, and write its metrics
+	 */
+	public void endIteration(int iter, double lRate, double errs, double loss, double map) {
+		iterationMillis = (System.nanoTime() - begin) / 1e6;
+		sgdMillis = sgdNanos / 1e6;
+		tuplesPerSecond = sgdNanos == 0 ? 0 : tuples * 1e9 / sgdNanos;
+		evalMillis = evalNanos / 1e6;
+		checkpointMillis = checkpointNanos / 1e6;
+		gcMillis = collectionTime() - gcBegin;
+		learningRate = lRate;
+		this.loss = loss;
+		MAP = map;
+		iteration = iter;
+
+		if (pw != null) {
+			pw.println(String.format("%d,%.1f,%.1f,%.0f,%.1f,%.1f,%.0f,%.6g,%.6g,%.6g,%.6f", iter, iterationMillis,
+					sgdMillis, tuplesPerSecond, evalMillis, checkpointMillis, gcMillis, lRate, errs, loss, map));
+			pw.flush();
+		}
+	}
+
+	/**
+	 * Close the CSV file, and withdraw the metrics from JMX
+	 */
+	public void close() {
+		if (pw != null) {
+			pw.close();
+			pw = null;
+		}
+
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (JMException e) {
+				// already unregistered by another model of the same name
+			}
+			name = null;
+		}
+	}
+
+	/**
+	 * @return accumulated collection time (ms) of all garbage collectors
+	 */
+	private static long collectionTime() {
+		long sum = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			long time = gc.getCollectionTime();
+			if (time > 0)
+				sum += time;
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("iter %d: %.0f ms, sgd %.0f ms (%.0f tuples/s), eval %.0f ms, checkpoint %.0f ms, "
+				+ "gc %.0f ms", iteration, iterationMillis, sgdMillis, tuplesPerSecond, evalMillis, checkpointMillis, gcMillis);
+	}
+
+	@Override
+	public int getIteration() {
+		return iteration;
+	}
+
+	@Override
+	public double getIterationMillis() {
+		return iterationMillis;
+	}
+
+	@Override
+	public double getSgdMillis() {
+		return sgdMillis;
+	}
+
+	@Override
+	public double getTuplesPerSecond() {
+		return tuplesPerSecond;
+	}
+
+	@Override
+	public double getEvalMillis() {
+		return evalMillis;
+	}
+
+	@Override
+	public double getCheckpointMillis() {
+		return checkpointMillis;
+	}
+
+	@Override
+	public double getGcMillis() {
+		return gcMillis;
+	}
+
+	@Override
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	@Override
+	public double getLoss() {
+		return loss;
+	}
+
+	@Override
+	public double getMAP() {
+		return MAP;
+	}
+
+	@Override
+	public long getTotalTuples() {
+		return totalTuples;
+	}
+
+	@Override
+	public double getTotalSgdMillis() {
+		return totalSgdNanos / 1e6;
+	}
+
+	@Override
+	public double getTotalEvalMillis() {
+		return totalEvalNanos / 1e6;
+	}
+
+	@Override
+	public double getTotalCheckpointMillis() {
+		return totalCheckpointNanos / 1e6;
+	}
+
+	@Override
+	public double getTotalGcMillis() {
+		return collectionTime() - gcStart;
+	}
+}
@@ -0,0 +1,39 @@
+package model;
+
+/**
+ * JMX view of the training progress of a recommender, see
+ * {@link TrainingMetrics}. Times are in milliseconds; the metrics of an
+ * iteration are those of the last completed one.
+ */
+public interface TrainingMetricsMBean {
+
+	int getIteration();
+
+	double getIterationMillis();
+
+	double getSgdMillis();
+
+	double getTuplesPerSecond();
+
+	double getEvalMillis();
+
+	double getCheckpointMillis();
+
+	double getGcMillis();
+
+	double getLearningRate();
+
+	double getLoss();
+
+	double getMAP();
+
+	long getTotalTuples();
+
+	double getTotalSgdMillis();
+
+	double getTotalEvalMillis();
+
+	double getTotalCheckpointMillis();
+
+	double getTotalGcMillis();
+}
@@ -0,0 +1,146 @@
+package util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read a binary file written by {@link BinaryWriter} through memory-mapped
+ * buffers. The file is mapped window by window, so that it can be larger than
+ * a single mapping (2GB); arrays are copied in bulk from the mapped windows.
+ */
+public class BinaryReader implements Closeable {
+
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+
+	// current window, which starts at position base of the file
+	private MappedByteBuffer buf;
+	private long base;
+
+	public BinaryReader(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		size = channel.size();
+	}
+
+	/**
+	 * make sure that the given number of bytes can be read from the current
+	 * window, mapping the next window if necessary
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buf != null && buf.remaining() >= bytes)
+			return;
+
+		long pos = position();
+		long length = Math.min(WINDOW_SIZE, size - pos);
+		if (length < bytes)
+			throw new EOFException("Unexpected end of file at " + pos);
+
+		buf = channel.map(MapMode.READ_ONLY, pos, length);
+		base = pos;
+	}
+
+	/**
+	 * @return current position in the file
+	 */
+	public long position() {
+		return buf == null ? 0 : base + buf.position();
+	}
+
+	public boolean readBoolean() throws IOException {
+		ensure(1);
+		return buf.get() != 0;
+	}
+
+	public int readInt() throws IOException {
+		ensure(4);
+		return buf.getInt();
+	}
+
+	public long readLong() throws IOException {
+		ensure(8);
+		return buf.getLong();
+	}
+
+	public double readDouble() throws IOException {
+		ensure(8);
+		return buf.getDouble();
+	}
+
+	public String readString() throws IOException {
+		int length = readInt();
+		byte[] bytes = new byte[length];
+		readBytes(bytes, 0, length);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public void readBytes(byte[] dst, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(1);
+			int n = Math.min(length, buf.remaining());
+			buf.get(dst, offset, n);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void readShorts(short[] dst, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(2);
+			int n = Math.min(length, buf.remaining() / 2);
+			buf.asShortBuffer().get(dst, offset, n);
+			buf.position(buf.position() + n * 2);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void readInts(int[] dst, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(4);
+			int n = Math.min(length, buf.remaining() / 4);
+			buf.asIntBuffer().get(dst, offset, n);
+			buf.position(buf.position() + n * 4);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void readFloats(float[] dst, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(4);
+			int n = Math.min(length, buf.remaining() / 4);
+			buf.asFloatBuffer().get(dst, offset, n);
+			buf.position(buf.position() + n * 4);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void readDoubles(double[] dst, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(8);
+			int n = Math.min(length, buf.remaining() / 8);
+			buf.asDoubleBuffer().get(dst, offset, n);
+			buf.position(buf.position() + n * 8);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		buf = null;
+		file.close();
+	}
+}
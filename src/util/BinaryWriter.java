@@ -0,0 +1,134 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write primitives and primitive arrays to a binary file (big-endian) through
+ * a direct buffer, which can be read back by {@link BinaryReader}.
+ */
+public class BinaryWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	public BinaryWriter(String path) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+	}
+
+	/**
+	 * make room for the given number of bytes in the buffer
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buf.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+
+	public void writeBoolean(boolean val) throws IOException {
+		ensure(1);
+		buf.put((byte) (val ? 1 : 0));
+	}
+
+	public void writeInt(int val) throws IOException {
+		ensure(4);
+		buf.putInt(val);
+	}
+
+	public void writeLong(long val) throws IOException {
+		ensure(8);
+		buf.putLong(val);
+	}
+
+	public void writeDouble(double val) throws IOException {
+		ensure(8);
+		buf.putDouble(val);
+	}
+
+	/**
+	 * write a string as its length in bytes followed by its UTF-8 bytes
+	 */
+	public void writeString(String val) throws IOException {
+		byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	public void writeBytes(byte[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(1);
+			int n = Math.min(length, buf.remaining());
+			buf.put(src, offset, n);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void writeShorts(short[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(2);
+			int n = Math.min(length, buf.remaining() / 2);
+			buf.asShortBuffer().put(src, offset, n);
+			buf.position(buf.position() + n * 2);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void writeInts(int[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(4);
+			int n = Math.min(length, buf.remaining() / 4);
+			buf.asIntBuffer().put(src, offset, n);
+			buf.position(buf.position() + n * 4);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void writeFloats(float[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(4);
+			int n = Math.min(length, buf.remaining() / 4);
+			buf.asFloatBuffer().put(src, offset, n);
+			buf.position(buf.position() + n * 4);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public void writeDoubles(double[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			ensure(8);
+			int n = Math.min(length, buf.remaining() / 8);
+			buf.asDoubleBuffer().put(src, offset, n);
+			buf.position(buf.position() + n * 8);
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			file.close();
+		}
+	}
+}
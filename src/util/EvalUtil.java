@@ -1,12 +1,14 @@
 package util;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 public class EvalUtil {
-	static int topK = 20;
+	public static int topK = 20;
 
 	public static Double AP(List<Integer> posItems, List<Integer> rankedItems) {
 		if (posItems.size() == 0) {
@@ -21,11 +23,14 @@ public class EvalUtil {
 			return null;
 		}
 
+		// one pass: precision at a position only counts if it is positive
 		double avg = 0;
+		int correct = 0;
 		for (int i = 1; i <= rankedItems.size(); i++) {
-			Double precision = precisionAtK(posSet, rankedItems, i);
-			int retweet = posSet.contains(rankedItems.get(i - 1)) ? 1 : 0;
-			avg += precision * retweet;
+			if (posSet.contains(rankedItems.get(i - 1))) {
+				correct++;
+				avg += (double) correct / (double) i;
+			}
 		}
 		return avg / posSet.size();
 	}
@@ -48,13 +53,64 @@ public class EvalUtil {
 
 		int N = Math.min(rankedItems.size(), topK);
 		Map<Integer, Double> precisions = new HashMap<Integer, Double>();
+		int correct = 0;
 		for (int i = 1; i <= N; i++) {
-			double prec = precisionAtK(posSet, rankedItems, i);
-			precisions.put(i, prec);
+			if (posSet.contains(rankedItems.get(i - 1)))
+				correct++;
+			precisions.put(i, (double) correct / (double) i);
 		}
 		return precisions;
 	}
 
+	/**
+	 * Compute AP of a ranking in one pass
+	 * 
+	 * @param ranking
+	 *            ranked items, whose first {@code n} are used
+	 * @param positive
+	 *            positive items
+	 * @param numPos
+	 *            number of all positive items, including the unranked ones
+	 * @return AP, or NaN if there is no positive item
+	 */
+	public static double AP(int[] ranking, int n, BitSet positive, int numPos) {
+		if (numPos == 0) {
+			return Double.NaN;
+		}
+
+		double avg = 0;
+		int correct = 0;
+		for (int i = 1; i <= n; i++) {
+			if (positive.get(ranking[i - 1])) {
+				correct++;
+				avg += (double) correct / (double) i;
+			}
+		}
+		return avg / numPos;
+	}
+
+	/**
+	 * Compute precisions at 1, 2, ..., min(n, topK) of a ranking in one pass
+	 * 
+	 * @param ranking
+	 *            ranked items, whose first {@code n} are used
+	 * @param positive
+	 *            positive items
+	 * @param precs
+	 *            receives the precision at k in {@code precs[k - 1]}
+	 * @return number of computed precisions
+	 */
+	public static int precisionAll(int[] ranking, int n, BitSet positive, double[] precs) {
+		int N = Math.min(n, topK);
+		int correct = 0;
+		for (int i = 1; i <= N; i++) {
+			if (positive.get(ranking[i - 1]))
+				correct++;
+			precs[i - 1] = (double) correct / (double) i;
+		}
+		return N;
+	}
+
 
 	// K starts from 1
 	public static Double precisionAtK(HashSet<Integer> posSet,
@@ -72,6 +128,219 @@ public class EvalUtil {
 		return (double) correct / (double) K;
 	}
 
+	/**
+	 * Select the top-k items by a bounded heap. Items are ranked from the
+	 * highest score to the lowest, and items with the same score by their
+	 * indices, which is the order of a stable sort of the scores.
+	 * 
+	 * @param scores
+	 *            scores of items [0, n)
+	 * @return indices of the top-k items in ranked order
+	 */
+	public static int[] rankTop(double[] scores, int n, int k) {
+		int[] idx = new int[n];
+		for (int i = 0; i < n; i++)
+			idx[i] = i;
+
+		return rankTop(scores, idx, n, k);
+	}
+
+	/**
+	 * Select the top-k items as {@link #rankTop(double[], int, int)}, in the
+	 * arrays of a scratch
+	 * 
+	 * @return indices of the top-k items in ranked order, in the first
+	 *         {@code min(k, n)} entries of an array of the scratch, which is
+	 *         valid until the scratch is used for another ranking
+	 */
+	public static int[] rankTop(double[] scores, int n, int k, Scratch s) {
+		int[] idx = s.items = Scratch.ensure(s.items, n);
+		for (int i = 0; i < n; i++)
+			idx[i] = i;
+
+		s.heap = Scratch.ensure(s.heap, Math.min(k, n));
+		rankTop(scores, idx, n, k, s.heap);
+		return s.heap;
+	}
+
+	/**
+	 * Select the top-k of the given items, ranked as in
+	 * {@link #rankTop(double[], int, int)}
+	 * 
+	 * @param items
+	 *            indices of items, whose first {@code n} are ranked
+	 * @return indices of the top-k items in ranked order
+	 */
+	public static int[] rankTop(double[] scores, int[] items, int n, int k) {
+		int[] heap = new int[Math.min(k, n)];
+		rankTop(scores, items, n, k, heap);
+		return heap;
+	}
+
+	/**
+	 * Select the top-k of the given items into the first {@code min(k, n)}
+	 * entries of a heap array
+	 */
+	private static void rankTop(double[] scores, int[] items, int n, int k, int[] heap) {
+		k = Math.min(k, n);
+
+		// a heap whose root is the lowest ranked of the selected items
+		if (k == 0)
+			return;
+
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			int item = items[i];
+			if (size < k) {
+				heap[size] = item;
+				siftUp(scores, heap, size++);
+			} else if (before(scores, item, heap[0])) {
+				heap[0] = item;
+				siftDown(scores, heap, 0, size);
+			}
+		}
+
+		// move the lowest ranked items to the end one by one
+		for (int last = size - 1; last > 0; last--) {
+			int tmp = heap[0];
+			heap[0] = heap[last];
+			heap[last] = tmp;
+			siftDown(scores, heap, 0, last);
+		}
+	}
+
+	/**
+	 * @return whether item a is ranked before item b
+	 */
+	private static boolean before(double[] scores, int a, int b) {
+		int cmp = Double.compare(scores[a], scores[b]);
+		return cmp > 0 || (cmp == 0 && a < b);
+	}
+
+	private static void siftUp(double[] scores, int[] heap, int i) {
+		int item = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(scores, heap[parent], item))
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = item;
+	}
+
+	private static void siftDown(double[] scores, int[] heap, int i, int size) {
+		int item = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			// the lower ranked child
+			if (child + 1 < size && before(scores, heap[child], heap[child + 1]))
+				child++;
+			if (!before(scores, item, heap[child]))
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = item;
+	}
+
+	/**
+	 * Compute AP of the ranking of items [0, n) by scores (see
+	 * {@link #rankTop(double[], int, int)}) without sorting all the items:
+	 * only positive items are sorted, and the rank of each of them is counted
+	 * from the negative items ranked before it.
+	 * 
+	 * @param positive
+	 *            positive items
+	 * @param numPos
+	 *            number of all positive items, including the unranked ones
+	 * @return AP, or NaN if there is no positive item
+	 */
+	public static double AP(double[] scores, BitSet positive, int n, int numPos) {
+		return AP(scores, positive, n, numPos, new Scratch());
+	}
+
+	/**
+	 * Compute AP as {@link #AP(double[], BitSet, int, int)}, in the arrays of a
+	 * scratch, which does not allocate once they are large enough
+	 */
+	public static double AP(double[] scores, BitSet positive, int n, int numPos, Scratch s) {
+		if (numPos == 0) {
+			return Double.NaN;
+		}
+
+		int[] unranked = s.positives = Scratch.ensure(s.positives, positive.cardinality());
+		int numRanked = 0;
+		for (int i = positive.nextSetBit(0); i >= 0 && i < n; i = positive.nextSetBit(i + 1))
+			unranked[numRanked++] = i;
+		int[] pos = s.rankedPositives = Scratch.ensure(s.rankedPositives, numRanked);
+		rankTop(scores, unranked, numRanked, numRanked, pos);
+
+		// negBefore[m]: number of negative items ranked right before the m-th
+		// positive item, i.e., after the (m-1)-th
+		int[] negBefore = s.negBefore = Scratch.ensure(s.negBefore, numRanked + 1);
+		Arrays.fill(negBefore, 0, numRanked + 1, 0);
+		for (int i = 0; i < n; i++) {
+			if (positive.get(i))
+				continue;
+
+			// number of positive items ranked before item i
+			int lo = 0, hi = numRanked;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (before(scores, pos[mid], i))
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			negBefore[lo]++;
+		}
+
+		double avg = 0;
+		int rank = 0;
+		for (int m = 0; m < numRanked; m++) {
+			rank += negBefore[m] + 1;
+			avg += (double) (m + 1) / (double) rank;
+		}
+		return avg / numPos;
+	}
+
+	/**
+	 * Scratch arrays of the ranking metrics, reused by one thread across
+	 * rankings so that they do not allocate per user. Arrays only grow.
+	 */
+	public static class Scratch {
+		private int[] items = new int[0], heap = new int[0];
+		private int[] positives = new int[0], rankedPositives = new int[0], negBefore = new int[0];
+
+		private static int[] ensure(int[] arr, int size) {
+			return arr.length >= size ? arr : new int[Math.max(size, 2 * arr.length)];
+		}
+	}
+
+	/**
+	 * Running mean of values, where NaN stands for a missing value. It equals
+	 * {@link #mean(List)} of the same values with null for the missing ones.
+	 */
+	public static class Mean {
+		private double sum;
+		private int num, size;
+
+		public void add(double val) {
+			size++;
+			if (!Double.isNaN(val)) {
+				sum += val;
+				num++;
+			}
+		}
+
+		public double get() {
+			return size == 0 ? 0 : sum / num;
+		}
+	}
+
 	public static double mean(List<Double> list) {
 		if (list == null || list.size() == 0) {
 			return 0;
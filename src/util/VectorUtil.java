@@ -14,57 +14,52 @@ import matrix.DenseVector;
 
 public class VectorUtil {
 
-	public static DenseVector averageWordFactor(short[] words, double total,
-			DenseMatrix Q, int factors) {
+	/**
+	 * average the factors of words [from, to)
+	 */
+	public static DenseVector averageWordFactor(short[] words, int from, int to,
+			double total, DenseMatrix Q, int factors) {
 		DenseVector sum = new DenseVector(factors);
-		if (words == null || words.length == 0) {
+		double[] data = sum.getData();
+		if (from == to) {
 			return sum;
 		} else {
-			int length = words.length;
-			for (int i = 0; i < length; i++) {
-				int w = words[i];
-				DenseVector s = Q.row(w, false);
-				sum = sum.add(s, false);
+			for (int i = from; i < to; i++) {
+				Q.addRowTo(words[i], 1.0, data);
 			}
 			return sum.scale(1.0 / total, false);
 		}
 	}
 
+	/**
+	 * average the frequency weighted factors of words [from, to)
+	 */
 	public static DenseVector averageWordFactor(int[] words, short[] freq,
-			double total, DenseMatrix Q, int factors) {
+			int from, int to, double total, DenseMatrix Q, int factors) {
 		DenseVector sum = new DenseVector(factors);
-		if (words == null || words.length == 0 || total == 0.0) {
+		double[] data = sum.getData();
+		if (from == to || total == 0.0) {
 			return sum;
 		} else {
-			int length = words.length;
-			for (int i = 0; i < length; i++) {
-				int w = words[i];
-				short f = freq[i];
-				DenseVector s = Q.row(w, false);
-				if (f > 1) {
-					s = s.scale(f);
-				}
-				sum = sum.add(s, false);
+			for (int i = from; i < to; i++) {
+				Q.addRowTo(words[i], freq[i], data);
 			}
 			return sum.scale(1.0 / total, false);
 		}
 	}
 
+	/**
+	 * average the frequency weighted factors of words [from, to)
+	 */
 	public static DenseVector averageWordFactor(short[] words, short[] freq,
-			double total, DenseMatrix Q, int factors) {
+			int from, int to, double total, DenseMatrix Q, int factors) {
 		DenseVector sum = new DenseVector(factors);
-		if (words == null || words.length == 0) {
+		double[] data = sum.getData();
+		if (from == to) {
 			return sum;
 		} else {
-			int length = words.length;
-			for (int i = 0; i < length; i++) {
-				short w = words[i];
-				short f = freq[i];
-				DenseVector s = Q.row(w, false);
-				if (f > 1) {
-					s = s.scale(f);
-				}
-				sum = sum.add(s, false);
+			for (int i = from; i < to; i++) {
+				Q.addRowTo(words[i], freq[i], data);
 			}
 			return sum.scale(1.0 / total, false);
 		}
@@ -72,7 +67,8 @@ public class VectorUtil {
 
 	public static void saveVector(DenseVector vector, String path)
 			throws IOException {
-		saveArray(vector.getData(), path);
+		// a copy, as a row view does not hand out its data
+		saveArray(vector.clone().getData(), path);
 	}
 
 	public static void saveArray(double[] data, String path)
@@ -100,7 +96,17 @@ public class VectorUtil {
 
 	public static void saveMatrix(DenseMatrix data, String path)
 			throws IOException {
-		save2DArray(data.getData(), path);
+		PrintWriter pw = new PrintWriter(new FileWriter(path));
+		int row = data.numRows(), col = data.numColumns();
+		double[] d = new double[col];
+		for (int i = 0; i < row; i++) {
+			data.copyRow(i, d, 0);
+			for (int j = 0; j < col - 1; j++) {
+				pw.print(d[j] + ",");
+			}
+			pw.println(d[col - 1]);
+		}
+		pw.close();
 	}
 
 	public static double[] loadArrayDouble(String path) throws IOException {